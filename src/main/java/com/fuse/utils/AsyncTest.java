@@ -0,0 +1,198 @@
+package com.fuse.utils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Asynchronous variant of the Test class; listeners return a CompletionStage
+ * of their verdict, which lets them perform asynchronous lookups. All listeners
+ * are invoked at once and the result completes as soon as the outcome is known,
+ * without waiting for the listeners that are still busy.
+ *
+ * Listeners can be (un)registered from any thread; changes don't affect tests that
+ * already started.
+ */
+public class AsyncTest <T> {
+	public enum Mode {
+		/** passes when all listeners pass; completes (false) as soon as one listener fails */
+		ALL,
+		/** passes when any listener passes; completes (true) as soon as one listener passes */
+		ANY
+	}
+
+	private Map<Object, List<Function<T, CompletionStage<Boolean>>>> listeners;
+	private List<Function<T, CompletionStage<Boolean>>> onceListeners;
+	private Mode mode;
+	private boolean cancelRemaining = false;
+
+	public AsyncTest() {
+		this(Mode.ALL);
+	}
+
+	public AsyncTest(Mode mode) {
+		listeners = new IdentityHashMap<Object, List<Function<T, CompletionStage<Boolean>>>>();
+		onceListeners = new ArrayList<Function<T, CompletionStage<Boolean>>>();
+		this.mode = mode;
+	}
+
+	public synchronized void setMode(Mode mode){
+		this.mode = mode;
+	}
+
+	public synchronized Mode getMode(){
+		return mode;
+	}
+
+	/**
+	 * Enables cancelling the stages of the listeners that are still busy once the
+	 * outcome is known (or the result is cancelled). Only enable this when the
+	 * listeners return stages of their own; a stage that is shared (like a cached
+	 * lookup) would be cancelled for all of its other users as well.
+	 * @param cancel True to cancel the remaining listener stages, false (the default) to only stop waiting for them
+	 */
+	public synchronized void setCancelRemaining(boolean cancel){
+		this.cancelRemaining = cancel;
+	}
+
+	public synchronized boolean isCancellingRemaining(){
+		return cancelRemaining;
+	}
+
+	public void addListener(Function<T, CompletionStage<Boolean>> newListener){
+		addListener(newListener, null);
+	}
+
+	public synchronized void addListener(Function<T, CompletionStage<Boolean>> newListener, Object owner){
+		// create owner collection if necessary
+		if(listeners.get(owner) == null){
+			listeners.put(owner, new ArrayList<Function<T, CompletionStage<Boolean>>>());
+		}
+
+		// add to owner collection
+		listeners.get(owner).add(newListener);
+	}
+
+	public void addOnceListener(Function<T, CompletionStage<Boolean>> newListener){
+		addOnceListener(newListener, null);
+	}
+
+	/**
+	 * Registers a listener that is only invoked by the first upcoming test
+	 * @param newListener The listener
+	 * @param owner Owner of the listener
+	 */
+	public synchronized void addOnceListener(Function<T, CompletionStage<Boolean>> newListener, Object owner){
+		addListener(newListener, owner);
+		onceListeners.add(newListener);
+	}
+
+	public synchronized void removeListener(Function<T, CompletionStage<Boolean>> listener){
+		// find listener
+		for (Map.Entry<Object, List<Function<T, CompletionStage<Boolean>>>> pair : listeners.entrySet()){
+			Iterator<Function<T, CompletionStage<Boolean>>> it = pair.getValue().iterator();
+			while (it.hasNext()) {
+				if(it.next() == listener)
+					// remove it
+					it.remove();
+			}
+		}
+
+		onceListeners.remove(listener);
+	}
+
+	public synchronized void removeListeners(Object owner){
+		List<Function<T, CompletionStage<Boolean>>> ls = listeners.remove(owner);
+		if(ls != null)
+			onceListeners.removeAll(ls);
+	}
+
+	public synchronized int size(){
+		int counter=0;
+		for (Map.Entry<Object, List<Function<T, CompletionStage<Boolean>>>> pair : listeners.entrySet())
+			counter += pair.getValue().size();
+		return counter;
+	}
+
+	/**
+	 * Invokes all listeners with the given argument. The result completes as soon
+	 * as the outcome is decided (or exceptionally with the first listener exception),
+	 * after which the stages of the remaining listeners are ignored (or cancelled,
+	 * see setCancelRemaining). Without listeners the test passes.
+	 *
+	 * @param arg the argument to give to all listeners
+	 * @return CompletableFuture The verdict
+	 */
+	public CompletableFuture<Boolean> test(T arg){
+		List<Function<T, CompletionStage<Boolean>>> snapshot = new ArrayList<>();
+		Mode mode;
+		boolean cancelRemaining;
+
+		synchronized(this){
+			mode = this.mode;
+			cancelRemaining = this.cancelRemaining;
+
+			for (Map.Entry<Object, List<Function<T, CompletionStage<Boolean>>>> pair : listeners.entrySet())
+				snapshot.addAll(pair.getValue());
+
+			// remove all the listeners that should only be called once
+			for(Function<T, CompletionStage<Boolean>> listener : new ArrayList<>(onceListeners))
+				removeListener(listener);
+		}
+
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+		if(snapshot.isEmpty()){
+			result.complete(true);
+			return result;
+		}
+
+		List<CompletableFuture<Boolean>> futures = new ArrayList<>(snapshot.size());
+
+		for(Function<T, CompletionStage<Boolean>> listener : snapshot){
+			CompletableFuture<Boolean> future;
+
+			try {
+				future = listener.apply(arg).toCompletableFuture();
+			} catch(RuntimeException exc){
+				future = new CompletableFuture<>();
+				future.completeExceptionally(exc);
+			}
+
+			futures.add(future);
+		}
+
+		boolean decisive = mode == Mode.ANY; // the verdict that decides the outcome
+		AtomicInteger remaining = new AtomicInteger(futures.size());
+
+		for(CompletableFuture<Boolean> future : futures){
+			future.whenComplete((Boolean verdict, Throwable exc) -> {
+				if(result.isDone()) return;
+
+				if(exc != null){
+					result.completeExceptionally(exc);
+				} else if((verdict != null && verdict) == decisive){
+					result.complete(decisive);
+				} else if(remaining.decrementAndGet() == 0){
+					result.complete(!decisive);
+				}
+			});
+		}
+
+		// short-circuit (or cancellation by the caller); stop the listeners that are still busy, if they may be stopped
+		if(cancelRemaining){
+			result.whenComplete((Boolean verdict, Throwable exc) -> {
+				for(CompletableFuture<Boolean> future : futures)
+					if(!future.isDone()) future.cancel(true);
+			});
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,182 @@
+package com.fuse.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Event for high-rate producers and slower consumers; producers on any thread
+ * trigger, the consumer side drains (using dispatchPending, or automatically on an
+ * executor) and only receives the latest value since the previous drain.
+ * With a key extractor the latest value per key is kept instead.
+ *
+ * Listeners are invoked by the draining thread; register them before producers
+ * start, or from the draining thread.
+ */
+public class ConflatingEvent<T> {
+  /** marks an empty slot */
+  private static final Object EMPTY = new Object();
+  /** stands in for null payloads and keys */
+  private static final Object NULL = new Object();
+
+  private Event<T> event = new Event<>();
+
+  // single-slot mode
+  private AtomicReference<Object> slot = new AtomicReference<>(EMPTY);
+
+  // keyed mode (keyExtractor != null)
+  private Function<T, ?> keyExtractor = null;
+  private ConcurrentHashMap<Object, Object> keyedSlots = null;
+  /** keys with a pending value, in the order they got their first pending value */
+  private Queue<Object> dirtyKeys = null;
+  private AtomicInteger dirtyCount = null;
+
+  private Executor executor = null;
+  private AtomicBoolean scheduled = new AtomicBoolean(false);
+  private Runnable drainTask = () -> {
+    // reset first; values triggered during the drain schedule a new one
+    scheduled.set(false);
+    dispatchPending();
+  };
+
+  private AtomicLong conflatedCount = new AtomicLong(0);
+
+  /** Creates a single-slot event, which only keeps the latest value */
+  public ConflatingEvent(){
+  }
+
+  /**
+   * Creates a keyed event, which keeps the latest value per key
+   * @param keyExtractor Determines the key of a payload
+   */
+  public ConflatingEvent(Function<T, ?> keyExtractor){
+    this.keyExtractor = keyExtractor;
+    this.keyedSlots = new ConcurrentHashMap<>();
+    this.dirtyKeys = new ConcurrentLinkedQueue<>();
+    this.dirtyCount = new AtomicInteger(0);
+  }
+
+  /**
+   * Makes every trigger schedule a drain on the given executor (at most one
+   * pending drain at any time), instead of waiting for dispatchPending calls
+   * @param executor The executor to drain on, null to only drain using dispatchPending
+   * @return ConflatingEvent This instance, for chaining
+   */
+  public ConflatingEvent<T> setExecutor(Executor executor){
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Stores the value as latest value (of its key), replacing any value that
+   * wasn't dispatched yet. Can be called from any thread.
+   * @param payload The value to dispatch
+   */
+  public void trigger(T payload){
+    Object value = payload == null ? NULL : payload;
+
+    if(keyExtractor == null){
+      if(slot.getAndSet(value) != EMPTY)
+        conflatedCount.incrementAndGet();
+    } else {
+      Object key = keyExtractor.apply(payload);
+      if(key == null) key = NULL;
+
+      if(keyedSlots.put(key, value) == null){
+        dirtyKeys.offer(key);
+        dirtyCount.incrementAndGet();
+      } else {
+        conflatedCount.incrementAndGet();
+      }
+    }
+
+    Executor executor = this.executor;
+    if(executor != null && scheduled.compareAndSet(false, true))
+      executor.execute(drainTask);
+  }
+
+  /**
+   * Dispatches the latest value (of every key) that was triggered since the
+   * previous drain to the listeners. Should only be called by a single (consumer) thread at a time.
+   * @return int The number of dispatched values
+   */
+  @SuppressWarnings("unchecked")
+  public int dispatchPending(){
+    if(keyExtractor == null){
+      Object value = slot.getAndSet(EMPTY);
+      if(value == EMPTY) return 0;
+      event.trigger(value == NULL ? null : (T)value);
+      return 1;
+    }
+
+    // only the keys that were dirty when the drain started; keeps a busy producer from starving the caller
+    int limit = dirtyCount.get();
+    int count = 0;
+
+    for(int i=0; i<limit; i++){
+      Object key = dirtyKeys.poll();
+      if(key == null) break;
+      dirtyCount.decrementAndGet();
+
+      Object value = keyedSlots.remove(key);
+      if(value == null) continue;
+
+      event.trigger(value == NULL ? null : (T)value);
+      count++;
+    }
+
+    return count;
+  }
+
+  /** @return boolean True if there are values that weren't dispatched yet */
+  public boolean hasPending(){
+    return keyExtractor == null ? slot.get() != EMPTY : dirtyCount.get() > 0;
+  }
+
+  /** @return long The number of values that were replaced before they were dispatched */
+  public long getConflatedCount(){
+    return conflatedCount.get();
+  }
+
+  public void addListener(Consumer<T> listener){
+    event.addListener(listener);
+  }
+
+  public void addListener(Consumer<T> listener, Object owner){
+    event.addListener(listener, owner);
+  }
+
+  public void removeListener(Consumer<T> listener){
+    event.removeListener(listener);
+  }
+
+  public void removeListeners(Object owner){
+    event.removeListeners(owner);
+  }
+
+  /** @return Event The consumer-side event, which is triggered by the drains */
+  public Event<T> getEvent(){
+    return event;
+  }
+
+  /** Drops all pending values and removes all listeners */
+  public void destroy(){
+    executor = null;
+    slot.set(EMPTY);
+
+    if(keyedSlots != null){
+      keyedSlots.clear();
+      dirtyKeys.clear();
+      dirtyCount.set(0);
+    }
+
+    event.destroy();
+  }
+}
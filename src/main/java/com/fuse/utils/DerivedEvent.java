@@ -0,0 +1,68 @@
+package com.fuse.utils;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Event that is triggered by a (fused) chain of filter/map operators
+ * applied to the payloads of a source event. All operators in a chain share
+ * the same source; the chain is evaluated by a single listener on the source,
+ * which is only registered while this event has listeners.
+ */
+class DerivedEvent<S, T> extends Event<T> {
+  /** returned by a stage for payloads that should not be passed on */
+  static final Object SKIP = new Object();
+
+  private Event<S> source;
+  private Function<Object, Object> stage;
+  private Consumer<S> subscriber;
+
+  @SuppressWarnings("unchecked")
+  DerivedEvent(Event<S> source, Function<Object, Object> stage){
+    this.source = source;
+    this.stage = stage;
+    this.subscriber = (InlineListener<S>)(S payload) -> {
+      Object result = this.stage.apply(payload);
+      if(result != SKIP)
+        this.trigger((T)result);
+    };
+  }
+
+  @Override
+  protected void onFirstListener(){
+    source.addListener(subscriber, this);
+  }
+
+  @Override
+  protected void onLastListenerRemoved(){
+    source.removeListener(subscriber);
+  }
+
+  @Override
+  public Event<T> filter(Predicate<T> predicate){
+    return new DerivedEvent<S, T>(source, fuse(stage, filterStage(predicate)));
+  }
+
+  @Override
+  public <R> Event<R> map(Function<T, R> mapper){
+    return new DerivedEvent<S, R>(source, fuse(stage, mapStage(mapper)));
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> Function<Object, Object> filterStage(Predicate<T> predicate){
+    return (Object value) -> predicate.test((T)value) ? value : SKIP;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T, R> Function<Object, Object> mapStage(Function<T, R> mapper){
+    return (Object value) -> mapper.apply((T)value);
+  }
+
+  private static Function<Object, Object> fuse(Function<Object, Object> first, Function<Object, Object> second){
+    return (Object value) -> {
+      Object result = first.apply(value);
+      return result == SKIP ? SKIP : second.apply(result);
+    };
+  }
+}
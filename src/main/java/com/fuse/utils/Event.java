@@ -1,20 +1,41 @@
 package com.fuse.utils;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.LinkedList;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 //import java.util.concurrent.locks.ReentrantLock;
 
 import com.fuse.utils.extensions.EventExtension;
 import com.fuse.utils.extensions.EventHistory;
+import com.fuse.utils.extensions.ExecutorDispatcher;
+import com.fuse.utils.extensions.HistoryStore;
+import com.fuse.utils.extensions.IsolatedDispatcher;
 import com.fuse.utils.extensions.OnceListener;
 import com.fuse.utils.extensions.ListenerGroupExt;
 import com.fuse.utils.extensions.ForwardExt;
+import com.fuse.utils.extensions.ListenerProfiler;
+import com.fuse.utils.extensions.ParallelDispatcher;
 
 /**
 * @author Mark van de Korput
@@ -23,37 +44,400 @@ import com.fuse.utils.extensions.ForwardExt;
 * in a reusable and safe way.
 */
 public class Event <T> {
-    /* optimized -flat- list over all callable listeners */
-    private List<Consumer<T>> listeners = null;
-    /** holds the owner of every registered listener */
-    private Map<Consumer<T>, Object> owners = null;
+    /** Determines what happens when a listener throws (a RuntimeException) during trigger */
+    public enum ErrorPolicy {
+        /** stop invoking listeners and let the exception propagate to the caller of trigger (default) */
+        PROPAGATE,
+        /** report the exception to the error event and continue with the next listener */
+        CONTINUE,
+        /** report the exception to the error event and skip the remaining listeners */
+        STOP,
+        /** report the exception to the error event, continue, and afterwards throw a ListenerDispatchException */
+        RETHROW_AFTER
+    }
+
+    /** Order in which trampolined triggers that were queued during a dispatch are processed */
+    public enum TrampolineOrder {
+        /** triggers queued by a listener are processed before earlier queued triggers */
+        DEPTH_FIRST,
+        /** triggers are processed in the order in which they were queued */
+        BREADTH_FIRST
+    }
+
+    /**
+     * Per-thread work queue of trampolined triggers. The outermost trampolined
+     * trigger on a thread drains the queue iteratively, so nested triggers don't
+     * nest stack frames.
+     */
+    private static class Trampoline {
+        private static final ThreadLocal<Trampoline> CURRENT = ThreadLocal.withInitial(Trampoline::new);
+        /** stands in for null payloads; ArrayDeque doesn't take nulls */
+        private static final Object NULL = new Object();
+
+        /** pairs of event and payload */
+        private ArrayDeque<Object> queue = new ArrayDeque<>();
+        /** pairs of event and payload queued by the dispatch that is currently running */
+        private ArrayList<Object> pending = new ArrayList<>();
+        private boolean draining = false;
+
+        @SuppressWarnings("unchecked")
+        static <T> void trigger(Event<T> event, T arg){
+            Trampoline t = CURRENT.get();
+
+            if(t.draining){
+                t.pending.add(event);
+                t.pending.add(arg == null ? NULL : arg);
+                return;
+            }
+
+            t.draining = true;
+            RuntimeException failure = null;
+
+            try {
+                failure = t.run(event, arg, failure);
+
+                while(!t.queue.isEmpty()){
+                    Event<Object> e = (Event<Object>)t.queue.pollFirst();
+                    Object a = t.queue.pollFirst();
+                    failure = t.run(e, a == NULL ? null : a, failure);
+                }
+            } finally {
+                t.draining = false;
+                t.queue.clear();
+                t.pending.clear();
+            }
+
+            if(failure != null) throw failure;
+        }
+
+        /// Dispatches one trigger and schedules the triggers it queued; a listener exception
+        /// doesn't discard the rest of the queue, it's returned (or added as suppressed to an earlier one)
+        private <T> RuntimeException run(Event<T> event, T arg, RuntimeException failure){
+            try {
+                event.triggerNow(arg);
+            } catch(RuntimeException exc){
+                if(failure == null) failure = exc;
+                else failure.addSuppressed(exc);
+            }
+
+            schedulePending();
+            return failure;
+        }
+
+        /// Moves the triggers queued by the last dispatch into the queue
+        private void schedulePending(){
+            if(pending.isEmpty()) return;
+
+            // depth-first triggers go to the front, keeping their order
+            for(int i=pending.size()-2; i>=0; i-=2){
+                if(((Event<?>)pending.get(i)).getTrampolineOrder() == TrampolineOrder.DEPTH_FIRST){
+                    queue.addFirst(pending.get(i+1));
+                    queue.addFirst(pending.get(i));
+                }
+            }
+
+            for(int i=0; i<pending.size(); i+=2){
+                if(((Event<?>)pending.get(i)).getTrampolineOrder() != TrampolineOrder.DEPTH_FIRST){
+                    queue.addLast(pending.get(i));
+                    queue.addLast(pending.get(i+1));
+                }
+            }
+
+            pending.clear();
+        }
+    }
+
+    /** Payload of the error event */
+    public static class ListenerError<T> {
+        private Event<T> event;
+        private Consumer<T> listener;
+        private T payload;
+        private RuntimeException exception;
+
+        public ListenerError(Event<T> event, Consumer<T> listener, T payload, RuntimeException exception){
+            this.event = event;
+            this.listener = listener;
+            this.payload = payload;
+            this.exception = exception;
+        }
+
+        public Event<T> getEvent(){ return event; }
+        public Consumer<T> getListener(){ return listener; }
+        public T getPayload(){ return payload; }
+        public RuntimeException getException(){ return exception; }
+    }
+
+    /**
+     * Listener that is part of the event machinery (history, forwards, derived events,
+     * executor lanes, bridges) instead of user code. These listeners update state that
+     * isn't thread-safe, so parallel dispatch, isolation mode and triggerAsync invoke them
+     * on the triggering thread, before the other listeners (without timeout or isolation).
+     * User callbacks, including once-listeners and whenTriggered callbacks, are never inline.
+     */
+    public interface InlineListener<T> extends Consumer<T> {}
+
+    /** Event whose listener is currently invoked concurrently (see dispatchConcurrently) by this thread */
+    private static final ThreadLocal<Event<?>> CONCURRENT_OWNER = new ThreadLocal<>();
+
+    /** Weakly referenced owner, stored in place of the owner itself */
+    private static class WeakOwner extends WeakReference<Object> {
+        WeakOwner(Object owner, ReferenceQueue<Object> queue) { super(owner, queue); }
+    }
+
+    /**
+     * Immutable storage for two or more listeners (or a single listener with a priority);
+     * every modification replaces the whole instance, so triggers can iterate without copying.
+     */
+    private static final class ListenerArray<T> {
+        /** arrays with more listeners than this get an index for listener lookups */
+        static final int INDEX_THRESHOLD = 16;
+
+        /** in dispatch order */
+        final Consumer<T>[] listeners;
+        final Object[] owners;
+        /** null when all listeners have the default priority 0 */
+        final int[] priorities;
+        /**
+         * position of every listener (first occurrence); built by the first lookup on a large
+         * array, so modifications (which replace the array) don't pay for an index every time
+         */
+        private volatile IdentityHashMap<Consumer<T>, Integer> index = null;
+        /** lazily created List view of the listeners */
+        List<Consumer<T>> view = null;
+
+        ListenerArray(Consumer<T>[] listeners, Object[] owners, int[] priorities){
+            this.listeners = listeners;
+            this.owners = owners;
+            this.priorities = priorities;
+        }
+
+        int indexOf(Consumer<T> listener){
+            if(listeners.length <= INDEX_THRESHOLD)
+                return scan(listener);
+
+            IdentityHashMap<Consumer<T>, Integer> idx = index;
+
+            if(idx == null){
+                idx = new IdentityHashMap<>(listeners.length * 2);
+                for(int i=listeners.length-1; i>=0; i--)
+                    idx.put(listeners[i], i);
+                index = idx;
+            }
+
+            Integer pos = idx.get(listener);
+            return pos == null ? -1 : pos;
+        }
+
+        /// Linear lookup, for modifications that copy the whole array anyway
+        int scan(Consumer<T> listener){
+            for(int i=0; i<listeners.length; i++)
+                if(listeners[i] == listener) return i;
+
+            return -1;
+        }
+
+        int priorityAt(int idx){
+            return priorities == null ? 0 : priorities[idx];
+        }
+
+        List<Consumer<T>> asList(){
+            if(view == null)
+                view = Collections.unmodifiableList(Arrays.asList(listeners));
+            return view;
+        }
+    }
+
+    /** Sequence number (and optionally the time) of the trigger that is currently being dispatched */
+    private static final class TriggerStamps {
+        final AtomicLong counter = new AtomicLong();
+        final boolean captureTime;
+        long sequence = -1;
+        long nanos = 0;
+
+        TriggerStamps(boolean captureTime){ this.captureTime = captureTime; }
+    }
+
+    /**
+     * Stages listener additions and removals that are published in a single
+     * rebuild of the listener storage, instead of one rebuild per listener.
+     * Removals are applied before additions. Staged changes are published by
+     * publish() or close() (so a batch can be used in a try-with-resources block),
+     * after which the batch can be reused.
+     */
+    public static final class Batch<T> implements AutoCloseable {
+        private final Event<T> event;
+        private List<Consumer<T>> adds = new ArrayList<>();
+        private List<Object> addOwners = new ArrayList<>();
+        /** null while all staged additions have the default priority 0 */
+        private int[] addPriorities = null;
+        private List<Consumer<T>> removes = new ArrayList<>();
+        private List<Object> removeOwners = new ArrayList<>();
+
+        private Batch(Event<T> event){
+            this.event = event;
+        }
+
+        public Batch<T> add(Consumer<T> listener){
+            return add(listener, null, 0);
+        }
+
+        public Batch<T> add(Consumer<T> listener, Object owner){
+            return add(listener, owner, 0);
+        }
+
+        public Batch<T> add(Consumer<T> listener, Object owner, int priority){
+            int idx = adds.size();
+            adds.add(listener);
+            addOwners.add(owner);
+
+            if(priority != 0 && addPriorities == null)
+                addPriorities = new int[Math.max(16, idx+1)];
+            if(addPriorities != null){
+                if(idx >= addPriorities.length)
+                    addPriorities = Arrays.copyOf(addPriorities, addPriorities.length * 2);
+                addPriorities[idx] = priority;
+            }
+
+            return this;
+        }
+
+        public Batch<T> addAll(Collection<? extends Consumer<T>> listeners, Object owner){
+            for(Consumer<T> listener : listeners)
+                add(listener, owner, 0);
+            return this;
+        }
+
+        public Batch<T> remove(Consumer<T> listener){
+            removes.add(listener);
+            return this;
+        }
+
+        /**
+         * @param owner owner of the listeners that should be removed
+         * @return Batch This batch, for chaining
+         */
+        public Batch<T> removeOwner(Object owner){
+            removeOwners.add(owner);
+            return this;
+        }
+
+        /** @return int Number of staged additions and removals */
+        public int size(){
+            return adds.size() + removes.size() + removeOwners.size();
+        }
+
+        /**
+         * Applies all staged changes; if the event is currently triggering, they're
+         * applied (all at once) when the current notifications have finished.
+         */
+        public void publish(){
+            if(size() == 0) return;
+
+            Consumer<T>[] ls = adds.toArray(newListenerArray(adds.size()));
+            Object[] os = addOwners.toArray();
+            int[] ps = addPriorities == null ? null : Arrays.copyOf(addPriorities, ls.length);
+            Consumer<T>[] rls = removes.toArray(newListenerArray(removes.size()));
+            Object[] ros = removeOwners.toArray();
+
+            adds.clear();
+            addOwners.clear();
+            addPriorities = null;
+            removes.clear();
+            removeOwners.clear();
+
+            event.modify(() -> {
+                // (executor listeners are removed when the other listeners are)
+                ExecutorDispatcher<T> executors = event.executorDispatcher();
+                if(executors != null){
+                    for(Consumer<T> l : rls) executors.remove(l);
+                    for(Object o : ros) executors.removeOwner(o);
+                }
+
+                event.rebuildListeners(ls, os, ps, rls, ros);
+            });
+        }
+
+        @Override
+        public void close(){
+            publish();
+        }
+    }
+
+    /** Rarely used state, kept out of the Event instances that don't need it */
+    private static final class Extras<T> {
+        Queue<Runnable> modOpsQueue; // mods to be executed when modification is possible
+        /** true while doEndModBlocker executes the queued mods */
+        boolean drainingModOps = false;
+        Queue<Consumer<List<Consumer<T>>>> postModOpsQueue; // triggers to be executed after modification ends
+        List<EventExtension<T>> extensions = null;
+        /** direct reference to the profiling extension (if enabled) so trigger doesn't have to look it up */
+        ListenerProfiler<T> profiler = null;
+        /** direct reference to the parallel dispatch extension (if enabled) */
+        ParallelDispatcher<T> parallel = null;
+        /** holds the listeners that were registered with an executor */
+        ExecutorDispatcher<T> executors = null;
+        /** direct reference to the isolation extension (if enabled) */
+        IsolatedDispatcher<T> isolation = null;
+        /** null means PROPAGATE; keeps the default trigger path free of any error handling */
+        ErrorPolicy errorPolicy = null;
+        Event<ListenerError<T>> errorEvent = null;
+        /** null when not trampolined */
+        TrampolineOrder trampoline = null;
+        /** null when trigger stamps are disabled */
+        TriggerStamps stamps = null;
+        /** receives the WeakOwner references of garbage-collected owners; only created when weak owners are used */
+        ReferenceQueue<Object> collectedOwners = null;
+        /**
+         * modifications made by concurrently invoked listeners, applied by the triggering thread;
+         * created (by the triggering thread) before the first concurrent dispatch
+         */
+        Queue<Runnable> concurrentModOps = null;
+        /** dispatches triggerAsync when neither parallel dispatch nor isolation is enabled */
+        ParallelDispatcher<T> asyncDispatcher = null;
+    }
+
+    /**
+     * Registered listeners, in the most compact form for their number:
+     * null (no listeners), a Consumer (a single listener without priority,
+     * its owner is in singleOwner) or a ListenerArray
+     */
+    private Object listenerStore = null;
+    /** owner of the listener when listenerStore holds a single Consumer */
+    private Object singleOwner = null;
     /** Holds the number of _currently active_ trigger operations (more than 1 means recursive triggers) */
     private int triggerCount = 0;
     private int activeModifiersCount = 0;
-    private Queue<Runnable> modOpsQueue; // mods to be executed when modification is possible
-    private Queue<Consumer<List<Consumer<T>>>> postModOpsQueue; // triggers to be executed after modification ends
-    private List<EventExtension<T>> extensions = null;
+    /** null until any of the less common features is used */
+    private Extras<T> extras = null;
+
+    private Extras<T> extras(){
+        if(extras == null) extras = new Extras<>();
+        return extras;
+    }
 
     public void destroy(){
         this.modify(() -> {
-
-            if(extensions != null)
-                for(int i=extensions.size()-1; i>=0; i--) {
-                    EventExtension<T> ext = extensions.get(i);
-                    ext.disable();
-                    removeExtension(ext);
-                }
-
-            // brute-force these removals
-            if(listeners != null){
-                listeners.clear();
-                listeners = null;
+            Extras<T> x = this.extras;
+
+            if(x != null){
+                if(x.extensions != null)
+                    for(int i=x.extensions.size()-1; i>=0; i--) {
+                        EventExtension<T> ext = x.extensions.get(i);
+                        ext.disable();
+                        removeExtension(ext);
+                    }
+
+                x.profiler = null;
+                x.parallel = null;
+                x.executors = null;
+                x.isolation = null;
             }
 
-            if(owners != null){
-                owners.clear();
-                owners = null;
-            }
+            // brute-force these removals
+            boolean hadListeners = listenerStore != null;
+            listenerStore = null;
+            singleOwner = null;
+            if(hadListeners) onLastListenerRemoved();
         });
     }
 
@@ -87,9 +471,13 @@ public class Event <T> {
             return;
         }
 
-        r.run();
-        triggerCount--;
-        doEndModBlocker();
+        try {
+            r.run();
+        } finally {
+            // also unfreeze when a listener threw, otherwise all future modifications would be queued forever
+            triggerCount--;
+            doEndModBlocker();
+        }
     }
 
     private void runModder(Runnable r, Runnable otherwiseR) {
@@ -100,49 +488,70 @@ public class Event <T> {
             return;
         }
 
-        r.run();
-        activeModifiersCount--;
-        doEndModifications();
-        doEndModBlocker();
+        try {
+            r.run();
+        } finally {
+            activeModifiersCount--;
+            doEndModifications();
+            doEndModBlocker();
+        }
     }
 
     private void freeze(Consumer<List<Consumer<T>>> func) {
         this.runFrozen(() -> {
-            if (this.listeners != null) {
+            if (this.listenerStore != null) {
                 List<Consumer<T>> ar = this.getAllListeners();
                 func.accept(ar);
             }
         // couldn't freeze; already modifying, queue operation
-        }, () -> {
-            if (this.postModOpsQueue == null) this.postModOpsQueue = new LinkedList<>();
-            this.postModOpsQueue.add(func);
-        });
+        }, () -> queuePostModOp(func));
+    }
+
+    private void queuePostModOp(Consumer<List<Consumer<T>>> func) {
+        Extras<T> x = extras();
+        if (x.postModOpsQueue == null) x.postModOpsQueue = new LinkedList<>();
+        x.postModOpsQueue.add(func);
     }
 
     private void modify(Runnable func) {
+        Extras<T> x = this.extras;
+        if (x != null && x.concurrentModOps != null && CONCURRENT_OWNER.get() == this) {
+            // a listener on another thread; the modification counters and queues belong to the triggering thread
+            x.concurrentModOps.add(func);
+            return;
+        }
+
         this.runModder(func, () -> {
-            if (modOpsQueue == null) modOpsQueue = new LinkedList<>();
-            modOpsQueue.add(func);
+            Extras<T> ex = extras();
+            if (ex.modOpsQueue == null) ex.modOpsQueue = new LinkedList<>();
+            ex.modOpsQueue.add(func);
         });
     }
 
     /// Checks if there are queued post-block operations and executes them if there ar no other blocks left
     private void doEndModBlocker() {
-        if (this.modOpsQueue != null && canModify() && this.modOpsQueue.size() > 0) {
-            // this.modify(() -> {
+        Extras<T> x = this.extras;
+        // (every executed operation ends with another call; those return right away, so the stack doesn't grow with the queue)
+        if (x != null && x.modOpsQueue != null && !x.drainingModOps && canModify() && x.modOpsQueue.size() > 0) {
+            x.drainingModOps = true;
+
+            try {
                 while (true) {
-                    Runnable r = this.modOpsQueue.poll();
+                    Runnable r = x.modOpsQueue.poll();
                     if(r == null) return;
                     this.modify(r); //.run();
                 }
-            // });
+            } finally {
+                x.drainingModOps = false;
+            }
         }
     }
 
     private void doEndModifications() {
-        if (this.postModOpsQueue != null && !hasActiveModifiers() && this.postModOpsQueue.size() > 0) {
+        Extras<T> x = this.extras;
+        if (x != null && x.postModOpsQueue != null && !hasActiveModifiers() && x.postModOpsQueue.size() > 0) {
             while (true) {
-                Consumer<List<Consumer<T>>> r = this.postModOpsQueue.poll();
+                Consumer<List<Consumer<T>>> r = x.postModOpsQueue.poll();
                 if(r == null) return;
                 this.freeze(r);
             }
@@ -159,15 +568,350 @@ public class Event <T> {
      * @param owner owner of the new listener
      */
     public void addListener(Consumer<T> newListener, Object owner){
-        this.modify(() -> {
-            // lazy initializing
-            if (this.listeners == null) this.listeners = new CopyOnWriteArrayList<>();
-            this.listeners.add(newListener);
+        this.modify(() -> insertListener(newListener, owner, 0));
+    }
 
-            // create owner collection if necessary
-            if(owners == null) owners = new IdentityHashMap<>();
-            owners.put(newListener, owner);
-        });
+    /**
+     * Register a new listener with a priority. Listeners with a higher priority
+     * are invoked before listeners with a lower priority, listeners with the same
+     * priority are invoked in registration order. Listeners registered without
+     * priority have priority 0.
+     *
+     * @param newListener reference to the listener that should be registered
+     * @param owner owner of the new listener
+     * @param priority priority of the new listener
+     */
+    public void addListener(Consumer<T> newListener, Object owner, int priority){
+        this.modify(() -> insertListener(newListener, owner, priority));
+    }
+
+    /**
+     * Register many listeners at once; the listener storage is rebuilt once
+     * for all of them, instead of once per listener.
+     *
+     * @param newListeners the listeners that should be registered, in registration order
+     * @param owner owner of the new listeners
+     */
+    public void addListeners(Collection<? extends Consumer<T>> newListeners, Object owner){
+        batch().addAll(newListeners, owner).publish();
+    }
+
+    /**
+     * @return Batch A new batch for staging listener additions and removals that are published at once
+     */
+    public Batch<T> batch(){
+        return new Batch<T>(this);
+    }
+
+    /**
+     * Register a new listener that is invoked on the given executor (like a
+     * render or I/O thread) instead of on the triggering thread. Payloads are
+     * handed to the executor directly; all payloads that are triggered before the
+     * executor gets to run are delivered by a single task. The listener can
+     * be removed like any other listener.
+     *
+     * @param newListener reference to the listener that should be registered
+     * @param owner owner of the new listener
+     * @param executor executor to invoke the listener on (null to invoke it synchronously)
+     */
+    public void addListener(Consumer<T> newListener, Object owner, Executor executor){
+        if(executor == null){
+            addListener(newListener, owner);
+            return;
+        }
+
+        Extras<T> x = extras();
+
+        if(x.executors == null){
+            ExecutorDispatcher<T> ext = new ExecutorDispatcher<T>(this);
+            this.enable(ext);
+            x.executors = ext;
+        }
+
+        x.executors.add(newListener, owner, executor);
+    }
+
+    /// Returns the executor listener extension, null if no listeners were ever registered with an executor
+    private ExecutorDispatcher<T> executorDispatcher(){
+        Extras<T> x = this.extras;
+        return x == null ? null : x.executors;
+    }
+
+    /// Actually registers a listener, should only be called from within a modify operation
+    private void insertListener(Consumer<T> newListener, Object storedOwner, int priority){
+        if(listenerStore == null && priority == 0){
+            // single listener; stored inline
+            listenerStore = newListener;
+            singleOwner = storedOwner;
+            onFirstListener();
+            return;
+        }
+
+        ListenerArray<T> current = toListenerArray();
+        int count = current == null ? 0 : current.listeners.length;
+        boolean prioritized = priority != 0 || (current != null && current.priorities != null);
+
+        // insert after the last listener with the same or a higher priority,
+        // so the listener array itself is the (precomputed) dispatch order
+        int idx = count;
+        if(prioritized)
+            while(idx > 0 && current.priorityAt(idx-1) < priority)
+                idx--;
+
+        Consumer<T>[] ls = newListenerArray(count+1);
+        Object[] os = new Object[count+1];
+        int[] ps = prioritized ? new int[count+1] : null;
+
+        if(count > 0){
+            System.arraycopy(current.listeners, 0, ls, 0, idx);
+            System.arraycopy(current.listeners, idx, ls, idx+1, count-idx);
+            System.arraycopy(current.owners, 0, os, 0, idx);
+            System.arraycopy(current.owners, idx, os, idx+1, count-idx);
+
+            if(ps != null && current.priorities != null){
+                System.arraycopy(current.priorities, 0, ps, 0, idx);
+                System.arraycopy(current.priorities, idx, ps, idx+1, count-idx);
+            }
+        }
+
+        ls[idx] = newListener;
+        os[idx] = storedOwner;
+        if(ps != null) ps[idx] = priority;
+
+        setListeners(ls, os, ps);
+
+        if(count == 0) onFirstListener();
+    }
+
+    /// Returns the registered listeners as a ListenerArray (allocates a new one for a single inline listener), null when there are no listeners
+    @SuppressWarnings("unchecked")
+    private ListenerArray<T> toListenerArray(){
+        Object store = this.listenerStore;
+        if(store == null || store instanceof ListenerArray) return (ListenerArray<T>)store;
+
+        Consumer<T>[] ls = newListenerArray(1);
+        ls[0] = (Consumer<T>)store;
+        return new ListenerArray<T>(ls, new Object[]{ singleOwner }, null);
+    }
+
+    /// Replaces the registered listeners, using the most compact representation for them
+    private void setListeners(Consumer<T>[] ls, Object[] os, int[] ps){
+        if(ls.length == 0){
+            listenerStore = null;
+            singleOwner = null;
+        } else if(ls.length == 1 && (ps == null || ps[0] == 0)){
+            singleOwner = os[0];
+            listenerStore = ls[0];
+        } else {
+            singleOwner = null;
+            listenerStore = new ListenerArray<T>(ls, os, ps);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Consumer<T>[] newListenerArray(int size){
+        return (Consumer<T>[])new Consumer<?>[size];
+    }
+
+    /// Removes and adds many listeners with a single rebuild, should only be called from within a modify operation
+    private void rebuildListeners(Consumer<T>[] adds, Object[] addOwners, int[] addPriorities, Consumer<T>[] removes, Object[] removeOwners){
+        ListenerArray<T> current = toListenerArray();
+        int count = current == null ? 0 : current.listeners.length;
+
+        // like removeListener, every removal removes (the first occurrence of) one registration
+        IdentityHashMap<Consumer<T>, int[]> removeCounts = null;
+        if(removes.length > 0){
+            removeCounts = new IdentityHashMap<>(removes.length * 2);
+            for(Consumer<T> l : removes){
+                int[] c = removeCounts.get(l);
+                if(c == null) removeCounts.put(l, new int[]{ 1 });
+                else c[0]++;
+            }
+        }
+
+        IdentityHashMap<Object, Boolean> owners = null;
+        if(removeOwners.length > 0){
+            owners = new IdentityHashMap<>(removeOwners.length * 2);
+            for(Object o : removeOwners) owners.put(o, Boolean.TRUE);
+        }
+
+        // additions in dispatch order: stable sort by descending priority
+        Integer[] order = null;
+        if(addPriorities != null){
+            order = new Integer[adds.length];
+            for(int i=0; i<order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Integer.compare(addPriorities[b], addPriorities[a]));
+        }
+
+        Consumer<T>[] ls = newListenerArray(count + adds.length);
+        Object[] os = new Object[ls.length];
+        int[] ps = new int[ls.length];
+        boolean prioritized = false;
+        int n = 0;
+        int next = 0; // next addition to merge
+
+        for(int i=0; i<count; i++){
+            Consumer<T> l = current.listeners[i];
+            Object o = current.owners[i];
+
+            if(owners != null && isOwnedByAny(o, owners))
+                continue;
+
+            if(removeCounts != null){
+                int[] c = removeCounts.get(l);
+                if(c != null && c[0] > 0){
+                    c[0]--;
+                    continue;
+                }
+            }
+
+            int priority = current.priorityAt(i);
+
+            // additions go after all existing listeners with the same or a higher priority
+            while(next < adds.length){
+                int idx = order == null ? next : order[next];
+                int addPriority = addPriorities == null ? 0 : addPriorities[idx];
+                if(addPriority <= priority) break;
+                ls[n] = adds[idx];
+                os[n] = addOwners[idx];
+                ps[n++] = addPriority;
+                prioritized = true;
+                next++;
+            }
+
+            ls[n] = l;
+            os[n] = o;
+            ps[n++] = priority;
+            prioritized |= priority != 0;
+        }
+
+        for(; next < adds.length; next++){
+            int idx = order == null ? next : order[next];
+            ls[n] = adds[idx];
+            os[n] = addOwners[idx];
+            ps[n] = addPriorities == null ? 0 : addPriorities[idx];
+            prioritized |= ps[n] != 0;
+            n++;
+        }
+
+        if(adds.length == 0 && n == count)
+            return; // nothing removed or added
+
+        setListeners(Arrays.copyOf(ls, n), Arrays.copyOf(os, n), prioritized ? Arrays.copyOf(ps, n) : null);
+
+        if(count == 0 && n > 0) onFirstListener();
+        if(count > 0 && n == 0) onLastListenerRemoved();
+    }
+
+    /**
+     * Register a new listener with a weakly referenced owner.
+     * Once the owner is garbage-collected the listener is removed automatically,
+     * so forgetting to call removeListeners(owner) doesn't leak the owner.
+     * Note that the listener itself should NOT (through lambda captures)
+     * reference the owner, otherwise the owner never becomes collectable;
+     * see addWeakListener(Object, BiConsumer) for listeners that need the owner.
+     * The listener is removed by the first trigger (or weak listener registration)
+     * after the owner got collected; until then it's not counted by size() and hasOwner().
+     *
+     * @param newListener reference to the listener that should be registered
+     * @param owner owner of the new listener, only weakly referenced by this event
+     */
+    public void addWeakListener(Consumer<T> newListener, Object owner){
+        pruneCollectedOwners();
+        Extras<T> x = extras();
+        if(x.collectedOwners == null) x.collectedOwners = new ReferenceQueue<>();
+        WeakOwner ref = new WeakOwner(owner, x.collectedOwners);
+
+        this.modify(() -> insertListener(newListener, ref, 0));
+    }
+
+    /**
+     * Register a new listener with a weakly referenced owner, the owner is
+     * given to the listener with every invocation so the listener doesn't have
+     * to capture it. Once the owner is garbage-collected the listener is removed
+     * automatically. The listener can be removed using removeListeners(owner).
+     *
+     * @param owner owner of the new listener, only weakly referenced by this event
+     * @param newListener the listener that should be registered
+     */
+    public <O> void addWeakListener(O owner, BiConsumer<O, T> newListener){
+        pruneCollectedOwners();
+        Extras<T> x = extras();
+        if(x.collectedOwners == null) x.collectedOwners = new ReferenceQueue<>();
+        WeakOwner ref = new WeakOwner(owner, x.collectedOwners);
+
+        Consumer<T> wrapper = (T arg) -> {
+            @SuppressWarnings("unchecked")
+            O o = (O)ref.get();
+            if(o != null) newListener.accept(o, arg);
+        };
+
+        this.modify(() -> insertListener(wrapper, ref, 0));
+    }
+
+    /// Removes the listeners of weak owners that have been garbage-collected
+    private void pruneCollectedOwners(){
+        Extras<T> x = this.extras;
+        ReferenceQueue<Object> queue = x == null ? null : x.collectedOwners;
+        if(queue == null) return;
+
+        while(true) {
+            WeakOwner ref = (WeakOwner)queue.poll();
+            if(ref == null) return;
+
+            // the exact registration; the same listener can also be registered with other owners
+            this.modify(() -> {
+                Object store = this.listenerStore;
+                if(store == null) return;
+
+                if(!(store instanceof ListenerArray)){
+                    if(singleOwner != ref) return;
+                    listenerStore = null;
+                    singleOwner = null;
+                    onLastListenerRemoved();
+                    return;
+                }
+
+                @SuppressWarnings("unchecked")
+                ListenerArray<T> current = (ListenerArray<T>)store;
+                for(int i=0; i<current.owners.length; i++){
+                    if(current.owners[i] == ref){
+                        removeAt(current, i);
+                        return;
+                    }
+                }
+            });
+        }
+    }
+
+    /// Returns true if the stored owner value is a weak owner that has been garbage-collected
+    private static boolean isCollected(Object storedOwner){
+        return storedOwner instanceof WeakOwner && ((WeakOwner)storedOwner).get() == null;
+    }
+
+    /// Returns the actual owner for a stored owner value
+    private static Object resolveOwner(Object storedOwner){
+        return storedOwner instanceof WeakOwner ? ((WeakOwner)storedOwner).get() : storedOwner;
+    }
+
+    /// Returns true if the stored owner value refers to any of the given owners
+    private static boolean isOwnedByAny(Object storedOwner, IdentityHashMap<Object, Boolean> owners){
+        if(storedOwner instanceof WeakOwner){
+            Object o = ((WeakOwner)storedOwner).get();
+            return o != null && owners.containsKey(o); // collected owners are nobody's
+        }
+
+        return owners.containsKey(storedOwner);
+    }
+
+    /// Returns true if the stored owner value refers to the given owner
+    private static boolean isOwnedBy(Object storedOwner, Object owner){
+        if(storedOwner instanceof WeakOwner){
+            Object o = ((WeakOwner)storedOwner).get();
+            return o != null && o == owner; // collected owners are nobody's
+        }
+
+        return storedOwner == owner;
     }
 
     /**
@@ -180,18 +924,57 @@ public class Event <T> {
      */
     public void removeListener(Consumer<T> listener){
         this.modify(() -> {
-            // fetch local instances to avoid race-condition errors
-            List<Consumer<T>> listeners = this.listeners;
-            Map<Consumer<T>, Object> owners = this.owners;
+            ExecutorDispatcher<T> executors = executorDispatcher();
+            if(executors != null) executors.remove(listener);
+
+            Object store = this.listenerStore;
+            if(store == null) return; // nothing to remove
+
+            if(!(store instanceof ListenerArray)){
+                if(store != listener) return;
+                listenerStore = null;
+                singleOwner = null;
+                onLastListenerRemoved();
+                return;
+            }
 
-            if(owners == null || listeners == null) return; // nothing to remove
+            @SuppressWarnings("unchecked")
+            ListenerArray<T> current = (ListenerArray<T>)store;
+            int idx = current.scan(listener);
+            if(idx != -1) removeAt(current, idx);
+        });
+    }
 
-            if(listeners.remove(listener)){
-                if(owners != null){
-                    owners.remove(listener);
+    /// Replaces the listener storage with a copy without the given index, should only be called from within a modify operation
+    private void removeAt(ListenerArray<T> current, int idx){
+        int count = current.listeners.length - 1;
+        Consumer<T>[] ls = newListenerArray(count);
+        Object[] os = new Object[count];
+        int[] ps = null;
+
+        if(current.priorities != null){
+            // drop the priorities once all remaining listeners have the default priority
+            for(int i=0; i<=count; i++){
+                if(i != idx && current.priorities[i] != 0){
+                    ps = new int[count];
+                    break;
                 }
             }
-        });
+        }
+
+        System.arraycopy(current.listeners, 0, ls, 0, idx);
+        System.arraycopy(current.listeners, idx+1, ls, idx, count-idx);
+        System.arraycopy(current.owners, 0, os, 0, idx);
+        System.arraycopy(current.owners, idx+1, os, idx, count-idx);
+
+        if(ps != null){
+            System.arraycopy(current.priorities, 0, ps, 0, idx);
+            System.arraycopy(current.priorities, idx+1, ps, idx, count-idx);
+        }
+
+        setListeners(ls, os, ps);
+
+        if(count == 0) onLastListenerRemoved();
     }
 
     /**
@@ -204,33 +987,116 @@ public class Event <T> {
      */
     public void removeListeners(Object owner){
         this.modify(() -> {
-            List<Consumer<T>> ls = getOwnerListeners(owner);
-            for(Consumer<T> l : ls) {
-                removeListener(l);
-            }
+            ExecutorDispatcher<T> executors = executorDispatcher();
+            if(executors != null) executors.removeOwner(owner);
+
+            // single rebuild, instead of one per removed listener
+            rebuildListeners(newListenerArray(0), new Object[0], null, newListenerArray(0), new Object[]{ owner });
         });
     }
 
+    /**
+     * Registers all @Subscribe methods (without topic) of the given object as listeners,
+     * with the object as owner, so they can be removed using removeListeners(subscriber).
+     * The parameter types of the methods should accept this event's payloads,
+     * see subscribeAll(Object, Class) for subscribers with methods for different payload types.
+     *
+     * @param subscriber The object whose annotated methods to register
+     */
+    public void subscribeAll(Object subscriber){
+        subscribeAll(subscriber, null);
+    }
+
+    /**
+     * Registers the @Subscribe methods (without topic) of the given object that accept
+     * payloads of the given type as listeners, with the object as owner.
+     *
+     * @param subscriber The object whose annotated methods to register
+     * @param payloadType Only methods whose parameter type accepts this type are registered (null for all)
+     */
+    @SuppressWarnings("unchecked")
+    public void subscribeAll(Object subscriber, Class<? extends T> payloadType){
+        for(Subscribers.SubscriberMethod m : Subscribers.of(subscriber.getClass())){
+            if(!m.topic.isEmpty() || (payloadType != null && !m.payloadType.isAssignableFrom(payloadType)))
+                continue;
+
+            Consumer<T> listener = (Consumer<T>)(Consumer<?>)m.bind(subscriber);
+            addListener(listener, subscriber, m.priority);
+        }
+    }
+
+    /**
+     * Invoked (from within the modification that caused it) when the
+     * first listener gets registered. Can be overridden by subclasses that
+     * need to lazily set up their sources.
+     */
+    protected void onFirstListener(){
+        // override
+    }
+
+    /** Invoked (from within the modification that caused it) when the last listener is removed */
+    protected void onLastListenerRemoved(){
+        // override
+    }
+
+    /**
+     * @return List Immutable snapshot of the registered listeners, in dispatch order
+     */
+    @SuppressWarnings("unchecked")
     public final List<Consumer<T>> getAllListeners() {
-        return this.listeners;
+        Object store = this.listenerStore;
+
+        if(store == null)
+            return Collections.emptyList();
+
+        if(store instanceof ListenerArray)
+            return ((ListenerArray<T>)store).asList();
+
+        return Collections.singletonList((Consumer<T>)store);
+    }
+
+    /**
+     * @param listener The listener for which to find the priority
+     * @return int The priority with which the listener was registered (0 by default)
+     */
+    @SuppressWarnings("unchecked")
+    public int getPriority(Consumer<T> listener) {
+        Object store = this.listenerStore;
+        if(!(store instanceof ListenerArray)) return 0;
+
+        ListenerArray<T> ls = (ListenerArray<T>)store;
+        int idx = ls.indexOf(listener);
+        return idx == -1 ? 0 : ls.priorityAt(idx);
+    }
+
+    /**
+     * @param listener The listener for which to find the owner
+     * @return Object The owner with which the listener was registered (null if not registered or ownerless)
+     */
+    @SuppressWarnings("unchecked")
+    public Object getOwner(Consumer<T> listener) {
+        Object store = this.listenerStore;
+        if(store == null) return null;
+
+        if(store instanceof ListenerArray){
+            ListenerArray<T> ls = (ListenerArray<T>)store;
+            int idx = ls.indexOf(listener);
+            return idx == -1 ? null : resolveOwner(ls.owners[idx]);
+        }
+
+        return store == listener ? resolveOwner(singleOwner) : null;
     }
 
     public List<Consumer<T>> getOwnerListeners(Object owner) {
         List<Consumer<T>> ls = new ArrayList<Consumer<T>>();
 
         // fetch local instance to avoid race-condition errors
-        Map<Consumer<T>, Object> owners = this.owners;
-
-        if(owners == null)
-        return ls;
+        ListenerArray<T> current = toListenerArray();
+        if(current == null) return ls;
 
-        // fetch local instance to avoid race-condition errors
-        List<Consumer<T>> listeners = this.listeners;
-        if(listeners == null) return ls;
-        for(int idx=listeners.size()-1; idx>=0; idx--){
-            Consumer<T> listener = listeners.get(idx);
-            if(owners.get(listener) == owner)
-                ls.add(listener);
+        for(int idx=current.listeners.length-1; idx>=0; idx--){
+            if(isOwnedBy(current.owners[idx], owner))
+                ls.add(current.listeners[idx]);
         }
 
         return ls;
@@ -242,9 +1108,410 @@ public class Event <T> {
      * @param arg the payload to give to all listeners
      */
     public void trigger(T arg) {
-        this.freeze((frozenListeners) -> {
-            for(Consumer<T> c : frozenListeners) c.accept(arg);
-        });
+        Extras<T> x = this.extras;
+
+        if(x != null && x.trampoline != null){
+            Trampoline.trigger(this, arg);
+            return;
+        }
+
+        triggerNow(arg);
+    }
+
+    private void triggerNow(T arg) {
+        Extras<T> x = this.extras;
+
+        if(x != null && x.stamps != null){
+            triggerStamped(x.stamps, arg);
+            return;
+        }
+
+        dispatchNow(arg);
+    }
+
+    private void triggerStamped(TriggerStamps stamps, T arg) {
+        // nested triggers get their own stamps, the outer trigger's are restored afterwards
+        long prevSequence = stamps.sequence;
+        long prevNanos = stamps.nanos;
+        stamps.sequence = stamps.counter.getAndIncrement();
+        stamps.nanos = stamps.captureTime ? System.nanoTime() : 0;
+
+        try {
+            dispatchNow(arg);
+        } finally {
+            stamps.sequence = prevSequence;
+            stamps.nanos = prevNanos;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatchNow(T arg) {
+        Extras<T> x = this.extras;
+        if(x != null && triggerSpecial(x, arg)) return;
+
+        // plain dispatch; same as freeze(), without allocating
+        triggerCount++;
+
+        if(activeModifiersCount > 0){
+            triggerCount--;
+            queuePostModOp((frozenListeners) -> {
+                for(Consumer<T> c : frozenListeners) c.accept(arg);
+            });
+            return;
+        }
+
+        try {
+            Object store = this.listenerStore;
+
+            if(store instanceof ListenerArray){
+                Consumer<T>[] ls = ((ListenerArray<T>)store).listeners;
+                for(int i=0; i<ls.length; i++) ls[i].accept(arg);
+            } else if(store != null) {
+                ((Consumer<T>)store).accept(arg);
+            }
+        } finally {
+            // also unfreeze when a listener threw, otherwise all future modifications would be queued forever
+            triggerCount--;
+            doEndModBlocker();
+        }
+    }
+
+    /// Dispatches triggers that need weak owner pruning, parallel dispatch, error handling or profiling; returns false if a plain dispatch should be done
+    private boolean triggerSpecial(Extras<T> x, T arg) {
+        if(x.concurrentModOps != null) applyConcurrentModOps(x);
+        if(x.collectedOwners != null) pruneCollectedOwners();
+
+        ListenerProfiler<T> profiler = x.profiler;
+        ErrorPolicy policy = x.errorPolicy;
+
+        // (an error policy alone shouldn't make every trigger profiled)
+        boolean sampled = profiler != null && profiler.sample() && profiler.isEnabled();
+        IsolatedDispatcher<T> isolation = x.isolation;
+
+        if(isolation != null){
+            ListenerProfiler<T> p = sampled ? profiler : null;
+            this.freeze((frozenListeners) -> dispatchConcurrently(frozenListeners, arg, policy, p, isolation::dispatch));
+            return true;
+        }
+
+        ParallelDispatcher<T> parallel = x.parallel;
+
+        if(parallel != null && parallel.isParallel(size())){
+            ListenerProfiler<T> p = sampled ? profiler : null;
+            this.freeze((frozenListeners) -> dispatchConcurrently(frozenListeners, arg, policy, p, parallel::dispatch));
+            return true;
+        }
+
+        if(policy != null || sampled){
+            ListenerProfiler<T> p = sampled ? profiler : null;
+            this.freeze((frozenListeners) -> dispatch(frozenListeners, arg, policy, p));
+            return true;
+        }
+
+        return false;
+    }
+
+    /// Invokes the listeners with error handling according to the given policy, and timing if a profiler is given; returns false when stopped by the STOP policy
+    private boolean dispatch(List<Consumer<T>> listeners, T arg, ErrorPolicy policy, ListenerProfiler<T> profiler){
+        List<Throwable> errors = null;
+
+        for(Consumer<T> c : listeners) {
+            long t = profiler == null ? 0 : System.nanoTime();
+
+            try {
+                c.accept(arg);
+            } catch(RuntimeException exc) {
+                if(policy == null || policy == ErrorPolicy.PROPAGATE) throw exc;
+
+                reportError(c, arg, exc);
+                if(policy == ErrorPolicy.STOP) return false;
+
+                if(policy == ErrorPolicy.RETHROW_AFTER){
+                    if(errors == null) errors = new ArrayList<>();
+                    errors.add(exc);
+                }
+            } finally {
+                if(profiler != null) profiler.record(c, System.nanoTime() - t);
+            }
+        }
+
+        if(errors != null)
+            throw new ListenerDispatchException(errors);
+
+        return true;
+    }
+
+    /**
+     * Invokes the InlineListeners on this thread and hands all other listeners to the given
+     * concurrent dispatcher, which invokes every listener using a ConcurrentInvoker (which
+     * applies the profiler and collects listener exceptions; they're handled according to the
+     * error policy on this thread once the dispatcher returns). Modifications made by the
+     * concurrently invoked listeners are applied once the dispatch is done.
+     */
+    private void dispatchConcurrently(List<Consumer<T>> listeners, T arg, ErrorPolicy policy, ListenerProfiler<T> profiler, BiConsumer<List<Consumer<T>>, Consumer<Consumer<T>>> dispatcher){
+        List<Consumer<T>> inline = null;
+        List<Consumer<T>> concurrent = new ArrayList<>(listeners.size());
+
+        for(Consumer<T> c : listeners) {
+            if(c instanceof InlineListener){
+                if(inline == null) inline = new ArrayList<>();
+                inline.add(c);
+            } else {
+                concurrent.add(c);
+            }
+        }
+
+        if(inline != null && !dispatch(inline, arg, policy, profiler)) return;
+        if(concurrent.isEmpty()) return;
+
+        Extras<T> x = extras();
+        if(x.concurrentModOps == null) x.concurrentModOps = new ConcurrentLinkedQueue<>();
+        ConcurrentInvoker invoker = new ConcurrentInvoker(arg, policy, profiler);
+
+        try {
+            dispatcher.accept(concurrent, invoker);
+        } finally {
+            // (queued until the event unfreezes)
+            applyConcurrentModOps(x);
+        }
+
+        invoker.finish();
+    }
+
+    /// Applies the modifications that concurrently invoked listeners made; only called by the triggering thread
+    private void applyConcurrentModOps(Extras<T> x){
+        Queue<Runnable> queue = x.concurrentModOps;
+        for(Runnable r = queue.poll(); r != null; r = queue.poll())
+            modify(r);
+    }
+
+    /**
+     * Invokes single listeners for a concurrent dispatcher (possibly on many threads at once);
+     * applies the profiler and collects listener exceptions, which finish() handles according to
+     * the error policy. With STOP, listeners that didn't start yet when a listener threw are skipped.
+     */
+    private final class ConcurrentInvoker implements Consumer<Consumer<T>> {
+        private final T arg;
+        private final ErrorPolicy policy;
+        private final ListenerProfiler<T> profiler;
+        private final Queue<ListenerError<T>> failures = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+        ConcurrentInvoker(T arg, ErrorPolicy policy, ListenerProfiler<T> profiler){
+            this.arg = arg;
+            this.policy = policy;
+            this.profiler = profiler;
+        }
+
+        @Override
+        public void accept(Consumer<T> c){
+            Event<?> prevOwner = CONCURRENT_OWNER.get();
+            CONCURRENT_OWNER.set(Event.this);
+
+            try {
+                invoke(c);
+            } finally {
+                if(prevOwner == null) CONCURRENT_OWNER.remove();
+                else CONCURRENT_OWNER.set(prevOwner);
+            }
+        }
+
+        /// Invokes the listener without marking the thread; for listeners that run on the triggering thread
+        void invoke(Consumer<T> c){
+            if(stopped.get()) return;
+            long t = profiler == null ? 0 : System.nanoTime();
+
+            try {
+                c.accept(arg);
+            } catch(RuntimeException exc) {
+                failures.add(new ListenerError<T>(Event.this, c, arg, exc));
+                if(policy == ErrorPolicy.STOP) stopped.set(true);
+            } finally {
+                // (the profiler is synchronized)
+                if(profiler != null) profiler.record(c, System.nanoTime() - t);
+            }
+        }
+
+        /**
+         * Reports the collected exceptions to the error event for CONTINUE, STOP and RETHROW_AFTER
+         * and throws them as a single ListenerDispatchException for PROPAGATE and RETHROW_AFTER
+         */
+        void finish(){
+            if(failures.isEmpty()) return;
+
+            List<Throwable> errors = new ArrayList<>();
+            boolean report = policy != null && policy != ErrorPolicy.PROPAGATE;
+
+            for(ListenerError<T> failure : failures) {
+                if(report) reportError(failure.getListener(), arg, failure.getException());
+                errors.add(failure.getException());
+            }
+
+            if(!report || policy == ErrorPolicy.RETHROW_AFTER)
+                throw new ListenerDispatchException(errors);
+        }
+    }
+
+    private void reportError(Consumer<T> listener, T arg, RuntimeException exc){
+        Extras<T> x = this.extras;
+        Event<ListenerError<T>> errorEvent = x == null ? null : x.errorEvent;
+        if(errorEvent == null) return;
+
+        // (triggerAsync reports from the thread that completes the dispatch)
+        synchronized(errorEvent){
+            errorEvent.trigger(new ListenerError<T>(this, listener, arg, exc));
+        }
+    }
+
+    /**
+     * Enables trigger stamps: every trigger gets the next number of a monotonic
+     * sequence and optionally a System.nanoTime() timestamp, which listeners can
+     * read using getTriggerSequence() and getTriggerNanos() while they're invoked
+     * (no payload envelope needed). History recorded by the EventHistory extension
+     * stores the stamps along with the values (if its store supports it) and replays
+     * them through the same accessors. Note that the stamps are per event, not per thread;
+     * listeners of events that are triggered from multiple threads at the same time
+     * can't rely on them.
+     *
+     * @param captureTime When true, every trigger also captures System.nanoTime()
+     */
+    public void enableTriggerStamps(boolean captureTime){
+        Extras<T> x = extras();
+        TriggerStamps stamps = new TriggerStamps(captureTime);
+        // the sequence continues when only the time capture changes
+        if(x.stamps != null) stamps.counter.set(x.stamps.counter.get());
+        x.stamps = stamps;
+    }
+
+    public void disableTriggerStamps(){
+        if(extras != null) extras.stamps = null;
+    }
+
+    public boolean isTriggerStamped(){
+        return extras != null && extras.stamps != null;
+    }
+
+    /**
+     * @return long Sequence number of the trigger that is currently being dispatched
+     *         (or replayed), -1 when not dispatching or when trigger stamps are disabled
+     */
+    public long getTriggerSequence(){
+        Extras<T> x = this.extras;
+        return x == null || x.stamps == null ? -1 : x.stamps.sequence;
+    }
+
+    /**
+     * @return long System.nanoTime() of the trigger that is currently being dispatched
+     *         (or replayed), 0 when not captured
+     */
+    public long getTriggerNanos(){
+        Extras<T> x = this.extras;
+        return x == null || x.stamps == null ? 0 : x.stamps.nanos;
+    }
+
+    /**
+     * Enables (or disables) trampolined dispatch. A trampolined trigger that happens
+     * while the same thread is already dispatching a trampolined trigger (for example
+     * a listener that triggers a forwarded event, or a State that pushes to another State)
+     * is queued instead of being dispatched immediately; the outermost trampolined trigger
+     * processes the queue iteratively, so the stack depth stays constant however deep the
+     * chain of triggers is. Note that this means such a nested trigger returns before its
+     * listeners have been invoked. When a listener throws, the remaining queued triggers
+     * are still processed before the outermost trigger rethrows the first exception
+     * (later exceptions are added to it as suppressed).
+     *
+     * @param order The order in which queued triggers of this event are processed, null disables trampolining
+     */
+    public void setTrampolined(TrampolineOrder order){
+        if(order == null && extras == null) return;
+        extras().trampoline = order;
+    }
+
+    /** @return TrampolineOrder The trampoline order of this event, null if not trampolined */
+    public TrampolineOrder getTrampolineOrder(){
+        Extras<T> x = this.extras;
+        return x == null ? null : x.trampoline;
+    }
+
+    /**
+     * Configures what happens when a listener throws during trigger; see ErrorPolicy.
+     * Whatever the policy, the event is never left in its triggering (frozen) state
+     * by a listener exception.
+     *
+     * @param policy The new policy (null resets to the default PROPAGATE)
+     */
+    public void setErrorPolicy(ErrorPolicy policy){
+        policy = policy == ErrorPolicy.PROPAGATE ? null : policy;
+        if(policy == null && extras == null) return;
+        extras().errorPolicy = policy;
+    }
+
+    public ErrorPolicy getErrorPolicy(){
+        Extras<T> x = this.extras;
+        return x == null || x.errorPolicy == null ? ErrorPolicy.PROPAGATE : x.errorPolicy;
+    }
+
+    /**
+     * Returns the (lazily created) event that is triggered for every listener
+     * exception that is caught because of the configured ErrorPolicy
+     * @return Event The error event
+     */
+    public Event<ListenerError<T>> getErrorEvent(){
+        Extras<T> x = extras();
+        if(x.errorEvent == null)
+            x.errorEvent = new Event<>();
+        return x.errorEvent;
+    }
+
+    /**
+     * Notifies all currently registered listeners without blocking, using the configured
+     * concurrent dispatch (isolation or parallel dispatch, the common ForkJoinPool if neither
+     * is enabled). The event's own listeners (see InlineListener) are invoked on the calling
+     * thread first. Unlike trigger, this doesn't freeze the event; (un)registrations on the
+     * calling thread take effect immediately, but don't affect this dispatch. (Un)registrations
+     * made by the concurrently invoked listeners are applied by the next trigger.
+     * The error policy and the profiler apply like they do for trigger.
+     *
+     * @param arg the payload to give to all listeners
+     * @return CompletableFuture Completes when all listeners are done; exceptionally with a
+     *         ListenerDispatchException if any of the listeners threw (unless the error policy
+     *         is CONTINUE or STOP, in which case they're only reported to the error event)
+     */
+    public CompletableFuture<Void> triggerAsync(T arg) {
+        Extras<T> x = extras();
+        if(x.concurrentModOps == null) x.concurrentModOps = new ConcurrentLinkedQueue<>();
+        applyConcurrentModOps(x);
+        pruneCollectedOwners();
+
+        // (immutable snapshot)
+        List<Consumer<T>> listeners = getAllListeners();
+        if(listeners.isEmpty())
+            return CompletableFuture.completedFuture(null);
+
+        ListenerProfiler<T> profiler = x.profiler;
+        boolean sampled = profiler != null && profiler.sample() && profiler.isEnabled();
+        ConcurrentInvoker invoker = new ConcurrentInvoker(arg, x.errorPolicy, sampled ? profiler : null);
+
+        // the event's own listeners run on the calling thread
+        List<Consumer<T>> concurrent = new ArrayList<>(listeners.size());
+        for(Consumer<T> c : listeners) {
+            if(c instanceof InlineListener) invoker.invoke(c);
+            else concurrent.add(c);
+        }
+
+        CompletableFuture<Void> future;
+
+        if(concurrent.isEmpty()){
+            future = CompletableFuture.completedFuture(null);
+        } else if(x.isolation != null){
+            future = x.isolation.dispatchAsync(concurrent, invoker);
+        } else {
+            if(x.parallel == null && x.asyncDispatcher == null)
+                x.asyncDispatcher = new ParallelDispatcher<T>(this, 0, 64, ForkJoinPool.commonPool());
+            future = (x.parallel != null ? x.parallel : x.asyncDispatcher).dispatchAsync(concurrent, invoker);
+        }
+
+        return future.thenRun(invoker::finish);
     }
 
     /**
@@ -258,17 +1525,45 @@ public class Event <T> {
     }
 
     /**
-     * Returns the number of registered listeners
+     * Returns the number of registered listeners, including the listeners that
+     * were registered with an executor. Listeners of weak owners that were
+     * garbage-collected aren't counted, even though they're only actually
+     * removed by the next trigger or weak listener registration.
      *
      * @return int
      */
     public int size(){
-      return this.listeners == null ? 0 : listeners.size();
+      Extras<T> x = this.extras;
+      ExecutorDispatcher<T> executors = x == null ? null : x.executors;
+      int count = storedListenerCount(x != null && x.collectedOwners != null);
+
+      // executor listeners are stored as one (lane) listener per executor
+      if(executors != null)
+        count += executors.size() - executors.getLaneCount();
+
+      return count;
+    }
+
+    /// Returns the number of stored listeners, without those of collected weak owners
+    @SuppressWarnings("unchecked")
+    private int storedListenerCount(boolean weakOwners){
+      Object store = this.listenerStore;
+      if(store == null) return 0;
+      if(!(store instanceof ListenerArray)) return isCollected(singleOwner) ? 0 : 1;
+
+      ListenerArray<T> current = (ListenerArray<T>)store;
+      if(!weakOwners) return current.listeners.length;
+
+      int count = 0;
+      for(Object storedOwner : current.owners)
+        if(!isCollected(storedOwner)) count++;
+      return count;
     }
 
 
     private ForwardExt<T> getForwardExt(){
         // find existing
+        List<EventExtension<T>> extensions = extensionList();
         if(extensions != null) {
             for(int i=0; i<extensions.size(); i++){
                 EventExtension<T> ext = extensions.get(i);
@@ -314,7 +1609,20 @@ public class Event <T> {
      * @return boolean True if there are any listeners for the specified owner registered
      */
     public boolean hasOwner(Object owner){
-        return (owners != null && owners.containsValue(owner));
+        ExecutorDispatcher<T> executors = executorDispatcher();
+        if(executors != null && executors.hasOwner(owner)) return true;
+
+        Object store = this.listenerStore;
+        if(store == null) return false;
+
+        if(!(store instanceof ListenerArray))
+            return isOwnedBy(singleOwner, owner);
+
+        for(Object storedOwner : ((ListenerArray<?>)store).owners)
+            if(isOwnedBy(storedOwner, owner))
+                return true;
+
+        return false;
     }
 
     /**
@@ -322,8 +1630,15 @@ public class Event <T> {
      * @param listener The owner for which to check
      * @return boolean True if there are any listeners for the specified owner registered
      */
+    @SuppressWarnings("unchecked")
     public boolean hasListener(Consumer<T> listener){
-        return (listeners != null && listeners.contains(listener));
+        ExecutorDispatcher<T> executors = executorDispatcher();
+        if(executors != null && executors.hasListener(listener)) return true;
+
+        Object store = this.listenerStore;
+        if(store instanceof ListenerArray)
+            return ((ListenerArray<T>)store).indexOf(listener) != -1;
+        return store != null && store == listener;
     }
 
 
@@ -332,6 +1647,7 @@ public class Event <T> {
         String groupId = "ArglessListeners";
 
         // find existing
+        List<EventExtension<T>> extensions = extensionList();
         if(extensions != null) {
             for(int i=0; i<extensions.size(); i++){
                 EventExtension<T> ext = extensions.get(i);
@@ -381,28 +1697,64 @@ public class Event <T> {
         this.getArglessListenerGroupExtension().stopListeners(owner);
     }
 
+    //
+    // operators
+    //
+
+    /**
+     * Returns a derived event that is triggered for every payload of this event
+     * that passes the given predicate. Chained operators (like e.filter(p).map(f).filter(q))
+     * are fused into a single listener on this event, which is only registered
+     * while the derived event has listeners of its own.
+     *
+     * @param predicate The predicate payloads have to pass
+     * @return Event The derived event
+     */
+    public Event<T> filter(Predicate<T> predicate){
+        return new DerivedEvent<T, T>(this, DerivedEvent.filterStage(predicate));
+    }
+
+    /**
+     * Returns a derived event that is triggered with the mapped value of every payload
+     * of this event. See filter(Predicate) for the subscription behaviour.
+     *
+     * @param mapper Function that converts payloads of this event into payloads of the derived event
+     * @return Event The derived event
+     */
+    public <R> Event<R> map(Function<T, R> mapper){
+        return new DerivedEvent<T, R>(this, DerivedEvent.mapStage(mapper));
+    }
+
     //
     // extensions
     //
 
+    /// Returns the list of extensions, null when there are none
+    private List<EventExtension<T>> extensionList(){
+        Extras<T> x = this.extras;
+        return x == null ? null : x.extensions;
+    }
+
     public void addExtension(EventExtension<T> ext){
-        if(extensions == null) // lazy-init
-            extensions = new ArrayList<>();
+        Extras<T> x = extras();
+        if(x.extensions == null) // lazy-init
+            x.extensions = new ArrayList<>();
 
-        extensions.add(ext);
+        x.extensions.add(ext);
 
         // do some maintenance
         removeDoneExtensions();
     }
 
     public boolean removeExtension(EventExtension<T> ext){
+        List<EventExtension<T>> extensions = extensionList();
         if(extensions == null)
             return false; // nothing to remove
 
         boolean result = extensions.remove(ext);
 
         if(extensions.isEmpty())
-            extensions = null; // cleanup
+            this.extras.extensions = null; // cleanup
 
         return result;
     }
@@ -414,7 +1766,8 @@ public class Event <T> {
 
 
     private void removeDoneExtensions(){
-        if(this.extensions == null)
+        List<EventExtension<T>> extensions = extensionList();
+        if(extensions == null)
             return;
 
         for(int i=extensions.size()-1; i>=0; i--){
@@ -423,7 +1776,7 @@ public class Event <T> {
                 ext.disable();
                 removeExtension(ext);
                 // removeExtension sets extensions to null when it's empty
-                if(extensions == null)
+                if(extensionList() == null)
                     return;
             }
         }
@@ -448,7 +1801,8 @@ public class Event <T> {
      * @param owner owner of the new listener
      */
     public void addOnceListener(Consumer<T> newListener, Object owner){
-        this.enable(new OnceListener<T>(this, newListener, owner));
+        // (a modification, so it's deferred like addListener when invoked by a concurrently running listener)
+        this.modify(() -> this.enable(new OnceListener<T>(this, newListener, owner)));
     }
 
     //
@@ -456,6 +1810,7 @@ public class Event <T> {
     //
 
     private EventHistory<T> getHistoryExtension(){
+        List<EventExtension<T>> extensions = extensionList();
         if(extensions == null) return null;
 
         for(int i=0; i<extensions.size(); i++){
@@ -502,6 +1857,27 @@ public class Event <T> {
             ext.enable();
     }
 
+    /**
+     * Enables history recording into the given store (like a JournalHistoryStore
+     * which persists the history to disk). Replaces any previously enabled history.
+     * @param store The store to record the history into
+     */
+    public void enableHistory(HistoryStore<T> store){
+        EventHistory<T> ext = getHistoryExtension();
+
+        if(ext != null){
+            if(ext.getStore() == store){
+                ext.enable();
+                return;
+            }
+
+            ext.disable();
+            removeExtension(ext);
+        }
+
+        this.enable(new EventHistory<T>(this, store));
+    }
+
     /**
      * Returns true if this event is currently recording it history (false by default)
      * @return boolean The current history-recording status
@@ -517,19 +1893,216 @@ public class Event <T> {
      * @param func The Listener which should also be invoked for all history values
      */
     public void withAllValues(Consumer<T> func){
-        List<T> values = this.getHistory();
+        replayFrom(0, func, null);
+    }
 
-        if(values != null){
-            for(int i=0; i<values.size(); i++){
-                T value = values.get(i);
-                func.accept(value);
+    /**
+     * Streams the recorded history (if enabled), starting at the given history sequence,
+     * to the given listener and then registers it as a "normal" listener.
+     * The replay and the registration happen in a single modification, so the listener
+     * receives every value exactly once; values triggered during the replay
+     * (for example by the listener itself) are delivered live after the replay.
+     *
+     * @param sequence History sequence of the first value to replay (see EventHistory.getStore())
+     * @param listener The listener to replay the history to and register
+     * @param owner owner of the listener
+     */
+    public void replayFrom(long sequence, Consumer<T> listener, Object owner){
+        this.modify(() -> {
+            EventHistory<T> ext = getHistoryExtension();
+            TriggerStamps stamps = extras == null ? null : extras.stamps;
+
+            if(ext != null && stamps != null){
+                // expose the recorded stamps to the listener, like during the original triggers
+                long prevSequence = stamps.sequence;
+                long prevNanos = stamps.nanos;
+
+                try {
+                    ext.forEachStamped(sequence, (T value, long triggerSequence, long triggerNanos) -> {
+                        stamps.sequence = triggerSequence;
+                        stamps.nanos = triggerNanos;
+                        listener.accept(value);
+                    });
+                } finally {
+                    stamps.sequence = prevSequence;
+                    stamps.nanos = prevNanos;
+                }
+            } else if(ext != null) {
+                // streams the history from its store instead of materializing it
+                ext.spliterator(sequence).forEachRemaining(listener);
             }
+
+            insertListener(listener, owner, 0);
+        });
+    }
+
+    /**
+     * Replays the values of the given cursor to the given listener and then registers
+     * it as a "normal" listener, in a single modification (see replayFrom).
+     *
+     * @param source cursor over the values to replay, like EventHistory.spliterator()
+     * @param listener The listener to replay the values to and register
+     * @param owner owner of the listener
+     */
+    public void replay(Spliterator<T> source, Consumer<T> listener, Object owner){
+        this.modify(() -> {
+            source.forEachRemaining(listener);
+            insertListener(listener, owner, 0);
+        });
+    }
+
+    /**
+     * @param sequence History sequence of the first value the cursor returns
+     * @return Spliterator Cursor over the recorded history (empty when history was never enabled)
+     */
+    public Spliterator<T> historySpliterator(long sequence){
+        EventHistory<T> ext = getHistoryExtension();
+        return ext == null ? Spliterators.<T>emptySpliterator() : ext.spliterator(sequence);
+    }
+
+    //
+    // ListenerProfiler extension
+    //
+
+    /**
+     * Enables profiling of listener invocations. For the given fraction
+     * of triggers all listener invocations are timed and the slowest listeners
+     * are kept in a bounded table which can be read using getProfile().
+     *
+     * @param sampleRate Fraction (0.0 - 1.0) of triggers to profile
+     * @param topK The maximum number of (slowest) listeners to keep track of
+     */
+    public void enableProfiling(double sampleRate, int topK){
+        ListenerProfiler<T> profiler = getProfiler();
+        if(profiler != null){
+            profiler.setSampleRate(sampleRate);
+            return;
         }
 
-        addListener(func);
+        ListenerProfiler<T> ext = new ListenerProfiler<T>(this, sampleRate, topK);
+        this.enable(ext);
+        extras().profiler = ext;
+    }
+
+    /** Disables profiling and discards all recorded profiling data */
+    public void disableProfiling(){
+        ListenerProfiler<T> ext = getProfiler();
+        if(ext == null) return;
+        this.extras.profiler = null;
+        ext.disable();
+        removeExtension(ext);
+    }
+
+    /** @return ListenerProfiler The active profiling extension, or null if profiling is not enabled */
+    public ListenerProfiler<T> getProfiler(){
+        Extras<T> x = this.extras;
+        return x == null ? null : x.profiler;
+    }
+
+    /**
+     * Returns a snapshot of the profiling table, slowest listener first
+     * @return List Profiling data of the slowest sampled listeners (empty when profiling is disabled)
+     */
+    public List<ListenerProfiler.Entry> getProfile(){
+        ListenerProfiler<T> ext = getProfiler();
+        return ext == null ? new ArrayList<>() : ext.snapshot();
+    }
+
+    //
+    // ParallelDispatcher extension
+    //
+
+    /**
+     * Enables parallel dispatch on the common ForkJoinPool for triggers
+     * with at least the given number of listeners
+     * @param threshold Minimum number of listeners for parallel dispatch
+     */
+    public void enableParallelDispatch(int threshold){
+        enableParallelDispatch(threshold, 64, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Enables parallel dispatch; when this event has at least the given number of
+     * listeners, trigger splits the listeners into chunks which are invoked in parallel
+     * by the given pool and blocks until all are done. The event's own listeners (history,
+     * forwards, see InlineListener) are invoked on the triggering thread first.
+     * Listener exceptions don't stop the dispatch (except with the STOP error policy, which
+     * skips the listeners that didn't start yet); they're handled afterwards according to the
+     * error policy, without a policy they're thrown as a single ListenerDispatchException.
+     * Sampled triggers are profiled per listener. (Un)registrations made by the listeners
+     * on the pool threads are applied by the triggering thread once all listeners are done.
+     *
+     * @param threshold Minimum number of listeners for parallel dispatch
+     * @param chunkSize Number of listeners invoked sequentially by a single task
+     * @param pool The pool to invoke the listeners with
+     */
+    public void enableParallelDispatch(int threshold, int chunkSize, ForkJoinPool pool){
+        disableParallelDispatch();
+        ParallelDispatcher<T> ext = new ParallelDispatcher<T>(this, threshold, chunkSize, pool);
+        this.enable(ext);
+        extras().parallel = ext;
+    }
+
+    public void disableParallelDispatch(){
+        Extras<T> x = this.extras;
+        ParallelDispatcher<T> ext = x == null ? null : x.parallel;
+        if(ext == null) return;
+        x.parallel = null;
+        ext.disable();
+        removeExtension(ext);
+    }
+
+    //
+    // IsolatedDispatcher extension
+    //
+
+    /**
+     * Enables isolation mode; every listener is invoked on its own thread (a virtual
+     * thread when the runtime supports them) and trigger waits for each listener at most
+     * the given timeout. Listeners that time out are interrupted and counted (see
+     * IsolatedDispatcher.getTimedOutListeners), and optionally unsubscribed.
+     * The event's own listeners (history, forwards, see InlineListener)
+     * are invoked on the triggering thread first. The error policy and profiler apply
+     * to every listener, like for parallel dispatch (see enableParallelDispatch).
+     *
+     * A timed-out listener that ignores the interrupt keeps running after trigger
+     * returned, possibly at the same time as its invocation by a later trigger. These
+     * stragglers are counted (IsolatedDispatcher.getStragglerCount); while there are as
+     * many as IsolatedDispatcher.setMaxStragglers allows (256 by default), listener
+     * invocations are skipped and counted (IsolatedDispatcher.getSkippedCount).
+     * (Un)registrations made by the isolated listeners are applied by the triggering
+     * thread once the dispatch is done (those of stragglers by the next trigger).
+     *
+     * @param timeout Maximum time to wait for a listener (can be overridden per listener, see IsolatedDispatcher.setTimeout)
+     * @param unit Unit of the timeout
+     * @param unsubscribeOnTimeout When true, listeners that time out are removed
+     * @return IsolatedDispatcher The isolation extension
+     */
+    public IsolatedDispatcher<T> enableIsolation(long timeout, TimeUnit unit, boolean unsubscribeOnTimeout){
+        disableIsolation();
+        IsolatedDispatcher<T> ext = new IsolatedDispatcher<T>(this, timeout, unit);
+        ext.setUnsubscribeOnTimeout(unsubscribeOnTimeout);
+        this.enable(ext);
+        extras().isolation = ext;
+        return ext;
+    }
+
+    public void disableIsolation(){
+        Extras<T> x = this.extras;
+        IsolatedDispatcher<T> ext = x == null ? null : x.isolation;
+        if(ext == null) return;
+        x.isolation = null;
+        ext.disable();
+        removeExtension(ext);
+    }
+
+    /** @return IsolatedDispatcher The isolation extension, or null if isolation is not enabled */
+    public IsolatedDispatcher<T> getIsolation(){
+        Extras<T> x = this.extras;
+        return x == null ? null : x.isolation;
     }
 
     public String debugInfo() {
-      return "EVENT DEBUG INFO:\ntriggerCount: "+Integer.toString(this.triggerCount)+"\nModQueue count: "+Integer.toString(this.modOpsQueue.size());
+      return "EVENT DEBUG INFO:\ntriggerCount: "+Integer.toString(this.triggerCount)+"\nModQueue count: "+Integer.toString(extras == null || extras.modOpsQueue == null ? 0 : extras.modOpsQueue.size());
     }
 }
@@ -0,0 +1,270 @@
+package com.fuse.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Central publish/subscribe hub on top of the Event class. Payloads are published
+ * either by type (subscribers to the payload's class, any of its superclasses
+ * or any of its interfaces receive it) or by topic string.
+ *
+ * Every subscribed type and topic is backed by an Event instance, so listener
+ * owners and once-listeners work exactly like they do on Event.
+ */
+public class EventBus {
+  /** cached dispatch list for a concrete payload class */
+  private static class Resolution {
+    final int version;
+    final List<Event<Object>> events;
+    Resolution(int version, List<Event<Object>> events){ this.version = version; this.events = events; }
+  }
+
+  private Map<Class<?>, Event<Object>> typeEvents = new ConcurrentHashMap<>();
+  private Map<String, Event<Object>> topicEvents = new ConcurrentHashMap<>();
+  private Map<Class<?>, Resolution> resolutionCache = new ConcurrentHashMap<>();
+  /** incremented whenever the set of subscribed types changes, invalidates cached resolutions */
+  private AtomicInteger version = new AtomicInteger(0);
+
+  //
+  // type subscriptions
+  //
+
+  public <E> void subscribe(Class<E> type, Consumer<E> listener){
+    subscribe(type, listener, null);
+  }
+
+  /**
+   * Registers a listener for all published payloads that are an instance of the given type
+   * @param type Class of the payloads to receive (can be a super class or an interface)
+   * @param listener The listener to register
+   * @param owner Owner of the listener, which can be used to unsubscribe
+   */
+  public <E> void subscribe(Class<E> type, Consumer<E> listener, Object owner){
+    addTypeListener(type, (Event<Object> event) -> event.addListener(cast(listener), owner));
+  }
+
+  public <E> void subscribeOnce(Class<E> type, Consumer<E> listener){
+    subscribeOnce(type, listener, null);
+  }
+
+  /**
+   * Registers a listener that is only invoked for the first upcoming payload of the given type
+   * @param type Class of the payload to receive (can be a super class or an interface)
+   * @param listener The listener to register
+   * @param owner Owner of the listener, which can be used to unsubscribe
+   */
+  public <E> void subscribeOnce(Class<E> type, Consumer<E> listener, Object owner){
+    addTypeListener(type, (Event<Object> event) -> event.addOnceListener(cast(listener), owner));
+  }
+
+  /**
+   * Removes a listener that was registered for the given type
+   * @param type Class for which the listener was registered
+   * @param listener The listener to remove
+   */
+  public <E> void unsubscribe(Class<E> type, Consumer<E> listener){
+    removeTypeListeners(type, (Event<Object> event) -> event.removeListener(cast(listener)));
+  }
+
+  //
+  // topic subscriptions
+  //
+
+  public <E> void subscribe(String topic, Consumer<E> listener){
+    subscribe(topic, listener, null);
+  }
+
+  /**
+   * Registers a listener for payloads that are published with the given topic
+   * @param topic The topic to subscribe to
+   * @param listener The listener to register
+   * @param owner Owner of the listener, which can be used to unsubscribe
+   */
+  public <E> void subscribe(String topic, Consumer<E> listener, Object owner){
+    topicEvents.computeIfAbsent(topic, (String t) -> new Event<>()).addListener(cast(listener), owner);
+  }
+
+  public <E> void subscribeOnce(String topic, Consumer<E> listener){
+    subscribeOnce(topic, listener, null);
+  }
+
+  public <E> void subscribeOnce(String topic, Consumer<E> listener, Object owner){
+    topicEvents.computeIfAbsent(topic, (String t) -> new Event<>()).addOnceListener(cast(listener), owner);
+  }
+
+  /**
+   * Removes a listener that was registered for the given topic
+   * @param topic The topic for which the listener was registered
+   * @param listener The listener to remove
+   */
+  public <E> void unsubscribe(String topic, Consumer<E> listener){
+    Event<Object> event = topicEvents.get(topic);
+    if(event != null) event.removeListener(cast(listener));
+  }
+
+  /**
+   * Removes all type and topic listeners that were registered with the given owner
+   * @param owner The owner of the listeners to remove
+   */
+  public void unsubscribe(Object owner){
+    for(Class<?> type : typeEvents.keySet())
+      removeTypeListeners(type, (Event<Object> event) -> event.removeListeners(owner));
+
+    for(Event<Object> event : topicEvents.values())
+      event.removeListeners(owner);
+  }
+
+  //
+  // annotated subscribers
+  //
+
+  /**
+   * Registers all @Subscribe methods of the given object; methods with a topic
+   * subscribe to that topic, other methods to their parameter type. The object
+   * is the owner of the subscriptions, so unsubscribe(subscriber) removes them all.
+   * @param subscriber The object whose annotated methods to register
+   */
+  public void subscribeAll(Object subscriber){
+    for(Subscribers.SubscriberMethod m : Subscribers.of(subscriber.getClass())){
+      Consumer<Object> listener = m.bind(subscriber);
+
+      if(m.topic.isEmpty())
+        addTypeListener(m.payloadType, (Event<Object> event) -> event.addListener(listener, subscriber, m.priority));
+      else
+        topicEvents.computeIfAbsent(m.topic, (String t) -> new Event<>()).addListener(listener, subscriber, m.priority);
+    }
+  }
+
+  //
+  // publishing
+  //
+
+  /**
+   * Triggers all listeners that subscribed to the payload's class, any of
+   * its super classes or any of its interfaces
+   * @param payload The payload to publish
+   */
+  public void publish(Object payload){
+    Class<?> cls = payload.getClass();
+    Resolution res = resolutionCache.get(cls);
+
+    if(res == null || res.version != version.get()){
+      res = resolve(cls);
+      resolutionCache.put(cls, res);
+    }
+
+    List<Event<Object>> events = res.events;
+    for(int i=0; i<events.size(); i++)
+      events.get(i).trigger(payload);
+  }
+
+  /**
+   * Triggers all listeners that subscribed to the given topic
+   * @param topic The topic to publish to
+   * @param payload The payload to publish
+   */
+  public void publish(String topic, Object payload){
+    Event<Object> event = topicEvents.get(topic);
+    if(event != null) event.trigger(payload);
+  }
+
+  /**
+   * @param owner The owner for which to check
+   * @return boolean True if there are any listeners for the specified owner registered
+   */
+  public boolean hasOwner(Object owner){
+    for(Event<Object> event : typeEvents.values())
+      if(event.hasOwner(owner)) return true;
+
+    for(Event<Object> event : topicEvents.values())
+      if(event.hasOwner(owner)) return true;
+
+    return false;
+  }
+
+  /** Removes all subscriptions */
+  public void destroy(){
+    for(Event<Object> event : typeEvents.values()) event.destroy();
+    for(Event<Object> event : topicEvents.values()) event.destroy();
+    typeEvents.clear();
+    topicEvents.clear();
+    invalidate();
+  }
+
+  /// Registers listeners on the event for the given type (created if necessary); runs under the map's lock for that type, so removeTypeListeners can't drop the event in the meantime
+  private void addTypeListener(Class<?> type, Consumer<Event<Object>> registration){
+    boolean[] created = { false };
+
+    typeEvents.compute(type, (Class<?> t, Event<Object> event) -> {
+      if(event == null){
+        event = new Event<>();
+        created[0] = true;
+      }
+
+      registration.accept(event);
+      return event;
+    });
+
+    if(created[0]) invalidate();
+  }
+
+  /// Removes listeners from the event for the given type and drops the event once it doesn't have any listeners left; runs under the same lock as addTypeListener
+  private void removeTypeListeners(Class<?> type, Consumer<Event<Object>> removal){
+    boolean[] removed = { false };
+
+    typeEvents.computeIfPresent(type, (Class<?> t, Event<Object> event) -> {
+      removal.accept(event);
+      if(event.size() > 0) return event;
+      removed[0] = true;
+      return null;
+    });
+
+    if(removed[0]) invalidate();
+  }
+
+  private void invalidate(){
+    version.incrementAndGet();
+    resolutionCache.clear();
+  }
+
+  /// Finds the events for the given class and all its super classes and interfaces (most specific first)
+  private Resolution resolve(Class<?> cls){
+    int v = version.get();
+    Set<Class<?>> types = new LinkedHashSet<>();
+    collectTypes(cls, types);
+
+    List<Event<Object>> events = new ArrayList<>();
+    for(Class<?> type : types){
+      Event<Object> event = typeEvents.get(type);
+      if(event != null) events.add(event);
+    }
+
+    return new Resolution(v, events);
+  }
+
+  private static void collectTypes(Class<?> cls, Set<Class<?>> types){
+    for(Class<?> c = cls; c != null; c = c.getSuperclass())
+      types.add(c);
+
+    for(Class<?> c = cls; c != null; c = c.getSuperclass())
+      for(Class<?> iface : c.getInterfaces())
+        collectInterfaces(iface, types);
+  }
+
+  private static void collectInterfaces(Class<?> iface, Set<Class<?>> types){
+    if(!types.add(iface)) return;
+    for(Class<?> parent : iface.getInterfaces())
+      collectInterfaces(parent, types);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E> Consumer<Object> cast(Consumer<E> listener){
+    return (Consumer<Object>)(Consumer<?>)listener;
+  }
+}
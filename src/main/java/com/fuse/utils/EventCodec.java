@@ -0,0 +1,61 @@
+package com.fuse.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts event payloads to and from bytes, used wherever payloads leave
+ * the heap (like the journal history store).
+ *
+ * encode writes the value at the buffer's current position (advancing the position)
+ * and should let the buffer throw a BufferOverflowException when the value doesn't fit;
+ * decode reads a value from the buffer's position up to its limit.
+ * For flyweight payloads (see FlyweightCodec) view can return a value that
+ * reads directly from the buffer, without copying.
+ */
+public interface EventCodec<T> {
+  void encode(T value, ByteBuffer dst);
+
+  T decode(ByteBuffer src);
+
+  /**
+   * Returns a value for the bytes between the buffer's position and limit,
+   * which may be a (reused) view on the buffer itself instead of a copy. The
+   * returned value is only valid until the next call to view and as long as
+   * the buffer's content doesn't change. By default the value is decoded.
+   *
+   * @param src Buffer holding the encoded value
+   * @return T the (possibly reused) value
+   */
+  default T view(ByteBuffer src){
+    return decode(src);
+  }
+
+  /** @return EventCodec UTF-8 string codec */
+  static EventCodec<String> strings(){
+    return new EventCodec<String>(){
+      @Override public void encode(String value, ByteBuffer dst){ dst.put(value.getBytes(StandardCharsets.UTF_8)); }
+      @Override public String decode(ByteBuffer src){
+        byte[] bytes = new byte[src.remaining()];
+        src.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+    };
+  }
+
+  /** @return EventCodec Codec for (non-null) integers */
+  static EventCodec<Integer> integers(){
+    return new EventCodec<Integer>(){
+      @Override public void encode(Integer value, ByteBuffer dst){ dst.putInt(value); }
+      @Override public Integer decode(ByteBuffer src){ return src.getInt(); }
+    };
+  }
+
+  /** @return EventCodec Codec for (non-null) longs */
+  static EventCodec<Long> longs(){
+    return new EventCodec<Long>(){
+      @Override public void encode(Long value, ByteBuffer dst){ dst.putLong(value); }
+      @Override public Long decode(ByteBuffer src){ return src.getLong(); }
+    };
+  }
+}
@@ -0,0 +1,52 @@
+package com.fuse.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable view over an encoded payload in a (shared) ByteBuffer.
+ * Subclasses provide accessors that read their fields directly from
+ * the buffer, relative to the offset, for example:
+ *
+ * <pre>
+ * class SensorFrame extends Flyweight {
+ *   public long timestamp(){ return buffer.getLong(offset); }
+ *   public float value(){ return buffer.getFloat(offset + 8); }
+ * }
+ * </pre>
+ */
+public abstract class Flyweight {
+  protected ByteBuffer buffer = null;
+  protected int offset = 0;
+  protected int length = 0;
+
+  /**
+   * Points this flyweight at a region of a buffer
+   * @param buffer The buffer holding the encoded payload
+   * @param offset Absolute offset of the payload in the buffer
+   * @param length Number of bytes of the payload
+   * @return Flyweight this instance
+   */
+  public Flyweight wrap(ByteBuffer buffer, int offset, int length){
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    return this;
+  }
+
+  public ByteBuffer buffer(){ return buffer; }
+
+  public int offset(){ return offset; }
+
+  public int length(){ return length; }
+
+  /**
+   * Copies the payload bytes to the given buffer at its current position
+   * @param dst The buffer to copy to
+   */
+  public void copyTo(ByteBuffer dst){
+    ByteBuffer src = buffer.duplicate();
+    src.limit(offset + length);
+    src.position(offset);
+    dst.put(src);
+  }
+}
@@ -0,0 +1,43 @@
+package com.fuse.utils;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * EventCodec for Flyweight payloads. Encoding copies the payload bytes,
+ * decode returns a flyweight over a private copy of the bytes and view returns
+ * a reused flyweight over the source buffer itself (no copy, no allocation).
+ */
+public class FlyweightCodec<F extends Flyweight> implements EventCodec<F> {
+  private Supplier<F> factory;
+  private F viewInstance = null;
+
+  public FlyweightCodec(Supplier<F> factory){
+    this.factory = factory;
+  }
+
+  @Override
+  public void encode(F value, ByteBuffer dst){
+    value.copyTo(dst);
+  }
+
+  @Override
+  public F decode(ByteBuffer src){
+    ByteBuffer copy = ByteBuffer.allocate(src.remaining());
+    copy.put(src);
+    F flyweight = factory.get();
+    flyweight.wrap(copy, 0, copy.capacity());
+    return flyweight;
+  }
+
+  /** Not thread-safe; the returned instance is re-wrapped by every call */
+  @Override
+  public F view(ByteBuffer src){
+    if(viewInstance == null)
+      viewInstance = factory.get();
+
+    viewInstance.wrap(src, src.position(), src.remaining());
+    src.position(src.limit());
+    return viewInstance;
+  }
+}
@@ -0,0 +1,45 @@
+package com.fuse.utils;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Event for binary payloads; all listeners receive the same reusable
+ * Flyweight, wrapped around the triggered region of a (shared) buffer,
+ * so no payload object is allocated or copied per trigger.
+ *
+ * Listeners should NOT hold on to the flyweight (or the buffer) after they
+ * return; it is re-wrapped by the next trigger. Use FlyweightCodec.decode
+ * to get a detached copy.
+ */
+public class FlyweightEvent<F extends Flyweight> extends Event<F> {
+  private Supplier<F> factory;
+  private F flyweight;
+
+  public FlyweightEvent(Supplier<F> factory){
+    this.factory = factory;
+    this.flyweight = factory.get();
+  }
+
+  /**
+   * Triggers all listeners with the flyweight wrapped around the
+   * bytes between the buffer's position and limit
+   * @param buffer The buffer holding the encoded payload
+   */
+  public void trigger(ByteBuffer buffer){
+    trigger(buffer, buffer.position(), buffer.remaining());
+  }
+
+  /**
+   * Triggers all listeners with the flyweight wrapped around the given region of the buffer
+   * @param buffer The buffer holding the encoded payload
+   * @param offset Absolute offset of the payload in the buffer
+   * @param length Number of bytes of the payload
+   */
+  @SuppressWarnings("unchecked")
+  public void trigger(ByteBuffer buffer, int offset, int length){
+    // a recursive trigger can't re-wrap the flyweight the outer listeners are still using
+    F f = isTriggering() ? factory.get() : flyweight;
+    trigger((F)f.wrap(buffer, offset, length));
+  }
+}
@@ -0,0 +1,17 @@
+package com.fuse.utils;
+
+import java.util.Collection;
+
+/**
+ * Thrown after a dispatch in which one or more listeners threw an exception;
+ * the first exception is the cause, all exceptions are added as suppressed exceptions.
+ */
+public class ListenerDispatchException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public ListenerDispatchException(Collection<? extends Throwable> errors){
+    super(Integer.toString(errors.size())+" listener(s) threw an exception", errors.isEmpty() ? null : errors.iterator().next());
+    for(Throwable t : errors)
+      addSuppressed(t);
+  }
+}
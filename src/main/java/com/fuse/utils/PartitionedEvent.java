@@ -0,0 +1,250 @@
+package com.fuse.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Event that dispatches its payloads in parallel on a fixed number of lanes
+ * (threads), while preserving the order of payloads with the same key.
+ * Every trigger is routed by its key to one lane; each lane invokes the
+ * listeners for its payloads one by one, in trigger order.
+ *
+ * Every lane has its own Event instance which is only used from the lane's
+ * thread; listener (un)registrations are queued into the lanes just like
+ * payloads, so they take effect in order with the triggers.
+ *
+ * A listener exception doesn't stop its lane; it's reported to the error event
+ * (see getErrorEvent) and, like Event's default error policy, the remaining
+ * listeners are skipped for that payload. Use setErrorPolicy to invoke the
+ * remaining listeners anyway (each failure is reported with its listener).
+ */
+public class PartitionedEvent<K, T> {
+
+  /**
+   * Lock-free multi-producer single-consumer queue (linked nodes;
+   * producers swap the tail, the single consumer follows the next pointers)
+   */
+  static class MpscQueue<E> {
+    static class Node<E> {
+      E value;
+      volatile Node<E> next;
+      Node(E value){ this.value = value; }
+    }
+
+    private AtomicReference<Node<E>> tail;
+    /** consumer side only */
+    private Node<E> head;
+
+    MpscQueue(){
+      head = new Node<E>(null);
+      tail = new AtomicReference<>(head);
+    }
+
+    void offer(E value){
+      Node<E> node = new Node<>(value);
+      Node<E> prev = tail.getAndSet(node);
+      // (volatile write; orders the link before the producer's read of the lane's waiting flag)
+      prev.next = node;
+    }
+
+    /** @return E the next value, or null if the queue is empty */
+    E poll(){
+      Node<E> next = head.next;
+      if(next == null) return null;
+      E value = next.value;
+      next.value = null;
+      head = next;
+      return value;
+    }
+
+    boolean isEmpty(){
+      return head.next == null;
+    }
+  }
+
+  /** Queued (un)registration or barrier, executed on the lane's thread */
+  private static class Op {
+    Runnable func;
+    Op(Runnable func){ this.func = func; }
+  }
+
+  /** stands in for null payloads */
+  private static final Object NULL = new Object();
+
+  private class Lane implements Runnable {
+    Event<T> event = new Event<>();
+    MpscQueue<Object> queue = new MpscQueue<>();
+    Thread thread;
+    volatile boolean waiting = false;
+
+    Lane(){
+      // errors caught by the lane event's error policy (see setErrorPolicy)
+      event.getErrorEvent().addListener((Event.ListenerError<T> err) -> reportError(err));
+    }
+
+    void post(Object item){
+      queue.offer(item);
+      if(waiting) LockSupport.unpark(thread);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run(){
+      while(running){
+        int count = 0;
+        Object item;
+
+        // drain a batch
+        while(count < batchSize && (item = queue.poll()) != null){
+          try {
+            if(item instanceof Op)
+              ((Op)item).func.run();
+            else
+              event.trigger(item == NULL ? null : (T)item);
+          } catch(ListenerDispatchException exc){
+            // RETHROW_AFTER; every failure was already reported
+          } catch(RuntimeException exc){
+            // keep the lane alive
+            T payload = item instanceof Op || item == NULL ? null : (T)item;
+            reportError(new Event.ListenerError<T>(event, null, payload, exc));
+          }
+
+          count++;
+        }
+
+        if(count > 0) continue;
+
+        // idle; park until a producer unparks us
+        waiting = true;
+        if(queue.isEmpty() && running)
+          LockSupport.park(this);
+        waiting = false;
+      }
+    }
+  }
+
+  private Function<T, K> keyExtractor;
+  private List<Lane> lanes;
+  private int batchSize = 256;
+  private volatile boolean running = true;
+  private Event<Event.ListenerError<T>> errorEvent = new Event<>();
+
+  /**
+   * @param keyExtractor Determines the key of a payload; payloads with the same key are dispatched in order
+   * @param laneCount Number of dispatch threads
+   */
+  public PartitionedEvent(Function<T, K> keyExtractor, int laneCount){
+    this.keyExtractor = keyExtractor;
+    this.lanes = new ArrayList<>(Math.max(1, laneCount));
+
+    for(int i=0; i<Math.max(1, laneCount); i++){
+      Lane lane = new Lane();
+      lane.thread = new Thread(lane, "PartitionedEvent lane "+Integer.toString(i));
+      lane.thread.setDaemon(true);
+      lanes.add(lane);
+      lane.thread.start();
+    }
+  }
+
+  /**
+   * @param size Maximum number of payloads a lane dispatches before checking for idleness
+   * @return PartitionedEvent This instance, for chaining
+   */
+  public PartitionedEvent<K, T> setBatchSize(int size){
+    this.batchSize = Math.max(1, size);
+    return this;
+  }
+
+  public int getLaneCount(){
+    return lanes.size();
+  }
+
+  /**
+   * Sets the error policy of all lanes (see Event.setErrorPolicy); by default a
+   * listener exception skips the remaining listeners for that payload
+   * @param policy The error policy
+   */
+  public void setErrorPolicy(Event.ErrorPolicy policy){
+    for(Lane lane : lanes)
+      lane.post(new Op(() -> lane.event.setErrorPolicy(policy)));
+  }
+
+  /**
+   * Returns the event that is triggered with listener exceptions, from the lane
+   * threads (one at a time). The listener is null for exceptions that skipped the
+   * remaining listeners of a payload (the default error policy).
+   * @return Event The error event
+   */
+  public Event<Event.ListenerError<T>> getErrorEvent(){
+    return errorEvent;
+  }
+
+  private void reportError(Event.ListenerError<T> err){
+    synchronized(errorEvent){
+      errorEvent.trigger(err);
+    }
+  }
+
+  /**
+   * Queues the payload for dispatch on the lane of its key
+   * @param payload the payload to give to all listeners
+   */
+  public void trigger(T payload){
+    K key = keyExtractor.apply(payload);
+    int h = key == null ? 0 : key.hashCode();
+    h ^= (h >>> 16);
+    lanes.get((h & 0x7fffffff) % lanes.size()).post(payload == null ? NULL : payload);
+  }
+
+  public void addListener(Consumer<T> listener){
+    addListener(listener, null);
+  }
+
+  /**
+   * Registers a listener on all lanes; the listener can be invoked from
+   * multiple lane threads at the same time (but never concurrently for the same key)
+   * @param listener The listener to register
+   * @param owner owner of the listener
+   */
+  public void addListener(Consumer<T> listener, Object owner){
+    for(Lane lane : lanes)
+      lane.post(new Op(() -> lane.event.addListener(listener, owner)));
+  }
+
+  public void removeListener(Consumer<T> listener){
+    for(Lane lane : lanes)
+      lane.post(new Op(() -> lane.event.removeListener(listener)));
+  }
+
+  public void removeListeners(Object owner){
+    for(Lane lane : lanes)
+      lane.post(new Op(() -> lane.event.removeListeners(owner)));
+  }
+
+  /**
+   * Waits until all payloads triggered before this call have been dispatched
+   * @param timeout Maximum time to wait
+   * @param unit Unit of the timeout
+   * @return boolean False if the timeout elapsed first
+   * @throws InterruptedException When interrupted while waiting
+   */
+  public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(lanes.size());
+    for(Lane lane : lanes)
+      lane.post(new Op(latch::countDown));
+    return latch.await(timeout, unit);
+  }
+
+  /** Stops all lanes; payloads that are still queued are dropped */
+  public void destroy(){
+    running = false;
+    for(Lane lane : lanes)
+      LockSupport.unpark(lane.thread);
+  }
+}
@@ -6,6 +6,7 @@ import java.util.ListIterator;
 import java.util.function.Consumer;
 
 import com.fuse.utils.extensions.StateExt;
+import com.fuse.utils.extensions.StateHistory;
 import com.fuse.utils.extensions.StatePusher;
 import com.fuse.utils.extensions.StateValueRunner;
 
@@ -20,10 +21,13 @@ public class State<T> {
   private boolean bInitialized = false;
   private T value = null;
   private List<StateExt<T>> extensions = null;
+  /** direct reference to the history extension (if enabled), which is fed by set() */
+  private StateHistory<T> history = null;
 
-  public Event<T> newValueEvent = new Event<>();
-  public Event<State<T>> initializedEvent = new Event<>();
-  public Event<ChangeArgs> changeEvent = new Event<>();
+  // events are only allocated when they're first requested; most states only ever use one of them
+  private Event<T> newValueEvent = null;
+  private Event<State<T>> initializedEvent = null;
+  private Event<ChangeArgs> changeEvent = null;
 
   public State(){
   }
@@ -34,9 +38,9 @@ public class State<T> {
 
   public void destroy(){
     this.value = null;
-    this.newValueEvent.destroy();
-    this.initializedEvent.destroy();
-    this.changeEvent.destroy();
+    if(this.newValueEvent != null) this.newValueEvent.destroy();
+    if(this.initializedEvent != null) this.initializedEvent.destroy();
+    if(this.changeEvent != null) this.changeEvent.destroy();
 
     if(this.extensions != null){
 
@@ -49,26 +53,74 @@ public class State<T> {
 
       this.extensions = null;
     }
+
+    this.history = null;
   }
 
   public State<T> set(T value){
+    boolean wasInitialized = bInitialized;
+    notifyChange(setSilently(value), wasInitialized);
+    return this;
+  }
+
+  /**
+   * Changes the value without triggering any events or recording history;
+   * used to restore many states at once before notifying (see notifyChange)
+   * @param value The new value
+   * @return T The previous value
+   */
+  T setSilently(T value){
     T prevValue = this.value;
     this.value = value;
-
-    if(!bInitialized && value != null){
+    if(value != null)
       bInitialized = true;
+    return prevValue;
+  }
+
+  /**
+   * Triggers the events (and records the history) for a value change that was made using setSilently
+   * @param prevValue The value before the change
+   * @param wasInitialized Whether the state was initialized before the change
+   */
+  void notifyChange(T prevValue, boolean wasInitialized){
+    if(!wasInitialized && bInitialized && initializedEvent != null)
       initializedEvent.trigger(this);
-    }
+
+    // nothing to notify or record
+    if(this.newValueEvent == null && this.changeEvent == null && this.history == null)
+      return;
 
     boolean change =  (this.value != null && !this.value.equals(prevValue)) || this.value == null && prevValue != null;
 
-    if(change && this.value != null)
+    if(change && this.history != null)
+      this.history.record(this.value);
+
+    if(change && this.value != null && this.newValueEvent != null)
       this.newValueEvent.trigger(this.value);
 
-    if(change)
+    if(change && this.changeEvent != null)
       this.changeEvent.trigger(new ChangeArgs(prevValue, this.value));
+  }
 
-    return this;
+  /** @return Event The event that is triggered with every new (non-null) value; allocated on first use */
+  public Event<T> getNewValueEvent(){
+    if(newValueEvent == null)
+      newValueEvent = new Event<>();
+    return newValueEvent;
+  }
+
+  /** @return Event The event that is triggered when the state gets its first (non-null) value; allocated on first use */
+  public Event<State<T>> getInitializedEvent(){
+    if(initializedEvent == null)
+      initializedEvent = new Event<>();
+    return initializedEvent;
+  }
+
+  /** @return Event The event that is triggered with the previous and current value on every change; allocated on first use */
+  public Event<ChangeArgs> getChangeEvent(){
+    if(changeEvent == null)
+      changeEvent = new Event<>();
+    return changeEvent;
   }
 
   public T get(){
@@ -104,6 +156,32 @@ public class State<T> {
     return this;
   }
 
+  /**
+   * Enables recording of this state's changes into a bounded history, see StateHistory
+   * @param capacity Maximum number of retained values
+   * @return StateHistory The history extension
+   */
+  public StateHistory<T> enableHistory(int capacity){
+    disableHistory();
+    StateHistory<T> ext = new StateHistory<>(this, capacity);
+    ext.enable();
+    this.addExtension(ext);
+    this.history = ext;
+    return ext;
+  }
+
+  public void disableHistory(){
+    if(this.history == null) return;
+    this.history.disable();
+    this.removeExtension(this.history);
+    this.history = null;
+  }
+
+  /** @return StateHistory The history extension, null if history is not enabled */
+  public StateHistory<T> getHistory(){
+    return this.history;
+  }
+
   public void push(Consumer<T> func){
     this.push(func, null);
   }
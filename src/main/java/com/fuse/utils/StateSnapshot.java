@@ -0,0 +1,91 @@
+package com.fuse.utils;
+
+import com.fuse.utils.extensions.StateHistory;
+
+/**
+ * The values of a group of states at a single moment, which can be restored
+ * all at once. Snapshots are either captured from the current values or
+ * taken from the states' histories at a given time.
+ */
+public class StateSnapshot {
+  private State<?>[] states;
+  private Object[] values;
+
+  private StateSnapshot(State<?>[] states, Object[] values){
+    this.states = states;
+    this.values = values;
+  }
+
+  /**
+   * @param states The states to capture
+   * @return StateSnapshot Snapshot of the current values of the given states
+   */
+  public static StateSnapshot capture(State<?>... states){
+    Object[] values = new Object[states.length];
+    for(int i=0; i<states.length; i++)
+      values[i] = states[i].val();
+    return new StateSnapshot(states.clone(), values);
+  }
+
+  /**
+   * Takes the values the given states had at the given time from their histories
+   * (see State.enableHistory); states that didn't have a value yet at that time get null.
+   * @param time A System.nanoTime() timestamp
+   * @param states The states to take the values of
+   * @return StateSnapshot Snapshot of the values at the given time
+   */
+  public static StateSnapshot at(long time, State<?>... states){
+    Object[] values = new Object[states.length];
+
+    for(int i=0; i<states.length; i++){
+      StateHistory<?> history = states[i].getHistory();
+      if(history == null)
+        throw new IllegalStateException("State without history; enable it using State.enableHistory");
+      values[i] = history.valueAtTime(time);
+    }
+
+    return new StateSnapshot(states.clone(), values);
+  }
+
+  public int size(){
+    return states.length;
+  }
+
+  /**
+   * @param state One of the states of this snapshot
+   * @return Object The value of the given state in this snapshot
+   */
+  public Object getValue(State<?> state){
+    for(int i=0; i<states.length; i++)
+      if(states[i] == state) return values[i];
+    throw new IllegalArgumentException("State is not part of this snapshot");
+  }
+
+  /**
+   * Sets all states of this snapshot to their snapshot values. All values are
+   * changed before any events are triggered, so listeners see the complete snapshot.
+   */
+  public void restore(){
+    restoreAll(states, values);
+  }
+
+  /**
+   * Sets the values of the given states without notifying and then triggers
+   * the events of every state once (see State.setSilently and State.notifyChange)
+   * @param states The states to change
+   * @param values The new values, in the same order
+   */
+  @SuppressWarnings("unchecked")
+  static void restoreAll(State<?>[] states, Object[] values){
+    Object[] prevValues = new Object[states.length];
+    boolean[] wasInitialized = new boolean[states.length];
+
+    for(int i=0; i<states.length; i++){
+      wasInitialized[i] = states[i].isInitialized();
+      prevValues[i] = ((State<Object>)states[i]).setSilently(values[i]);
+    }
+
+    for(int i=0; i<states.length; i++)
+      ((State<Object>)states[i]).notifyChange(prevValues[i], wasInitialized[i]);
+  }
+}
@@ -0,0 +1,184 @@
+package com.fuse.utils;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves the values of a registered set of named states to a memory-mapped
+ * file and restores them in bulk. A restore first changes all values without
+ * notifying and then triggers the events of every changed state once, so
+ * listeners see the fully restored set instead of N set() cascades.
+ *
+ * The file consists of a 16 byte header (magic, format version, record count,
+ * reserved) followed by one record per state: the name length and the UTF-8
+ * name, then the value length (-1 for null) and the value as written by the codec.
+ */
+public class StateSnapshotStore {
+  private static final int MAGIC = 0x4A535331; // "JSS1"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+
+  private static class Entry<T> {
+    State<T> state;
+    EventCodec<T> codec;
+    byte[] name;
+    Entry(State<T> state, EventCodec<T> codec, byte[] name){ this.state = state; this.codec = codec; this.name = name; }
+  }
+
+  private Map<String, Entry<?>> entries = new LinkedHashMap<>();
+  private int bufferSize = 64 * 1024;
+
+  /**
+   * @param name Unique name of the state in the snapshot file
+   * @param state The state to save and restore
+   * @param codec Converts the state's (non-null) values to and from bytes
+   * @return StateSnapshotStore This store, for chaining
+   */
+  public <T> StateSnapshotStore register(String name, State<T> state, EventCodec<T> codec){
+    entries.put(name, new Entry<>(state, codec, name.getBytes(StandardCharsets.UTF_8)));
+    return this;
+  }
+
+  public StateSnapshotStore unregister(String name){
+    entries.remove(name);
+    return this;
+  }
+
+  public int size(){
+    return entries.size();
+  }
+
+  /**
+   * Writes the current values of all registered states to the given file (replacing its content)
+   * @param file The snapshot file
+   * @throws IOException When the file can't be written
+   */
+  public void save(Path file) throws IOException {
+    ByteBuffer buffer = null;
+
+    // encode into a heap buffer, growing it until everything fits
+    while(buffer == null){
+      try {
+        buffer = encode(ByteBuffer.allocate(bufferSize));
+      } catch(BufferOverflowException exc){
+        bufferSize *= 2;
+      }
+    }
+
+    buffer.flip();
+
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, buffer.remaining());
+      mapped.put(buffer);
+      mapped.force();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private ByteBuffer encode(ByteBuffer dst){
+    dst.putInt(MAGIC);
+    dst.putInt(VERSION);
+    dst.putInt(entries.size());
+    dst.putInt(0);
+
+    for(Entry<?> e : entries.values()){
+      Entry<Object> entry = (Entry<Object>)e;
+      dst.putInt(entry.name.length);
+      dst.put(entry.name);
+
+      Object value = entry.state.val();
+      if(value == null){
+        dst.putInt(-1);
+        continue;
+      }
+
+      int lenPos = dst.position();
+      dst.putInt(0);
+      entry.codec.encode(value, dst);
+      dst.putInt(lenPos, dst.position() - lenPos - 4);
+    }
+
+    return dst;
+  }
+
+  /**
+   * Restores the registered states from the given file. All values are decoded
+   * first; if that fails no state is changed. Then the values are set without
+   * notifying, after which the events of every changed state are triggered once.
+   * Records for unregistered names are ignored and registered states without
+   * a record keep their value.
+   *
+   * @param file The snapshot file
+   * @return int Number of restored states
+   * @throws IOException When the file can't be read or isn't a valid snapshot file
+   */
+  public int restore(Path file) throws IOException {
+    List<State<?>> states = new ArrayList<>();
+    List<Object> values = new ArrayList<>();
+
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+      MappedByteBuffer src = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      try {
+        if(src.remaining() < HEADER_SIZE || src.getInt() != MAGIC)
+          throw new IOException("Not a state snapshot file: "+file.toString());
+        if(src.getInt() != VERSION)
+          throw new IOException("Unsupported state snapshot format version in "+file.toString());
+
+        int count = src.getInt();
+        src.getInt();
+
+        for(int i=0; i<count; i++){
+          // check the lengths before allocating or slicing, a corrupt length could be negative or huge
+          int nameLen = src.getInt();
+          if(nameLen < 0 || nameLen > src.remaining())
+            throw new IOException("Corrupt state snapshot file (invalid name length): "+file.toString());
+
+          byte[] name = new byte[nameLen];
+          src.get(name);
+          int len = src.getInt();
+
+          if(len < -1 || len > src.remaining())
+            throw new IOException("Corrupt state snapshot file (invalid value length): "+file.toString());
+
+          Entry<?> entry = entries.get(new String(name, StandardCharsets.UTF_8));
+
+          if(len == -1){
+            if(entry != null){
+              states.add(entry.state);
+              values.add(null);
+            }
+            continue;
+          }
+
+          int end = src.position() + len;
+
+          if(entry != null){
+            ByteBuffer value = src.duplicate();
+            value.limit(end);
+            states.add(entry.state);
+            values.add(entry.codec.decode(value.slice()));
+          }
+
+          src.position(end);
+        }
+      } catch(BufferUnderflowException | IllegalArgumentException exc){
+        throw new IOException("Corrupt state snapshot file: "+file.toString(), exc);
+      }
+    }
+
+    StateSnapshot.restoreAll(states.toArray(new State<?>[0]), values.toArray());
+    return states.size();
+  }
+}
@@ -0,0 +1,22 @@
+package com.fuse.utils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as listener for Event.subscribeAll and EventBus.subscribeAll.
+ * The method must be an instance method with exactly one (non-primitive) parameter,
+ * which receives the payload. Public methods of public classes are invoked as fast
+ * as hand-written lambdas, other methods are invoked through a method handle.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Subscribe {
+  /** @return String EventBus topic to subscribe to; by default the method subscribes to its parameter type */
+  String topic() default "";
+
+  /** @return int Listener priority, see Event.addListener(Consumer, Object, int) */
+  int priority() default 0;
+}
@@ -0,0 +1,158 @@
+package com.fuse.utils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Finds the @Subscribe methods of classes (once per class) and binds them
+ * to subscriber instances as Consumers.
+ */
+class Subscribers {
+
+  /** A single @Subscribe method */
+  static class SubscriberMethod {
+    final Class<?> payloadType;
+    final String topic;
+    final int priority;
+    /** (Object subscriber)Consumer */
+    private final MethodHandle factory;
+
+    SubscriberMethod(Class<?> payloadType, String topic, int priority, MethodHandle factory){
+      this.payloadType = payloadType;
+      this.topic = topic;
+      this.priority = priority;
+      this.factory = factory;
+    }
+
+    /** @return Consumer Listener that invokes this method on the given subscriber */
+    @SuppressWarnings("unchecked")
+    Consumer<Object> bind(Object subscriber){
+      try {
+        return (Consumer<Object>)factory.invokeExact(subscriber);
+      } catch(RuntimeException | Error exc){
+        throw exc;
+      } catch(Throwable exc){
+        throw new RuntimeException(exc);
+      }
+    }
+  }
+
+  private static final ClassValue<List<SubscriberMethod>> METHODS = new ClassValue<List<SubscriberMethod>>(){
+    @Override protected List<SubscriberMethod> computeValue(Class<?> type){
+      return discover(type);
+    }
+  };
+
+  private static final MethodType BOUND_TYPE = MethodType.methodType(Consumer.class, Object.class);
+  private static final MethodType ACCEPT_TYPE = MethodType.methodType(void.class, Object.class);
+  private static final MethodHandle INVOKE_HANDLE;
+
+  static {
+    try {
+      INVOKE_HANDLE = MethodHandles.lookup().findStatic(Subscribers.class, "invokeHandle",
+        MethodType.methodType(Consumer.class, MethodHandle.class, Object.class));
+    } catch(ReflectiveOperationException exc){
+      throw new ExceptionInInitializerError(exc);
+    }
+  }
+
+  /**
+   * @param type Class of the subscriber
+   * @return List The (cached) @Subscribe methods of the given class and its super classes
+   */
+  static List<SubscriberMethod> of(Class<?> type){
+    return METHODS.get(type);
+  }
+
+  private static List<SubscriberMethod> discover(Class<?> type){
+    List<SubscriberMethod> result = new ArrayList<>();
+    // signatures of methods found in sub classes; overridden methods are only subscribed once
+    Set<String> seen = new HashSet<>();
+
+    for(Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()){
+      for(Method method : cls.getDeclaredMethods()){
+        if(method.isBridge() || method.isSynthetic()) continue;
+
+        Subscribe annotation = method.getAnnotation(Subscribe.class);
+        Class<?>[] params = method.getParameterTypes();
+        String signature = method.getName()+(params.length == 1 ? "("+params[0].getName()+")" : "");
+
+        if(!seen.add(signature) || annotation == null) continue;
+
+        if(Modifier.isStatic(method.getModifiers()) || params.length != 1 || params[0].isPrimitive())
+          throw new IllegalArgumentException("@Subscribe method "+cls.getName()+"."+method.getName()+" must be an instance method with a single non-primitive parameter");
+
+        result.add(new SubscriberMethod(params[0], annotation.topic(), annotation.priority(), factory(method)));
+      }
+    }
+
+    return result;
+  }
+
+  /// Creates a (Object subscriber)Consumer handle for the given method
+  private static MethodHandle factory(Method method){
+    if(isAccessible(method)){
+      try {
+        // generates a Consumer class, just like the compiler would for a method reference
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle impl = lookup.unreflect(method);
+        Class<?> cls = method.getDeclaringClass();
+
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+          MethodType.methodType(Consumer.class, cls),
+          ACCEPT_TYPE,
+          impl,
+          MethodType.methodType(void.class, method.getParameterTypes()[0]));
+
+        return site.getTarget().asType(BOUND_TYPE);
+      } catch(ReflectiveOperationException | LambdaConversionException | RuntimeException | LinkageError exc){
+        // fall back to a method handle
+      }
+    }
+
+    try {
+      method.setAccessible(true);
+      MethodHandle handle = MethodHandles.lookup().unreflect(method)
+        .asType(MethodType.methodType(void.class, Object.class, Object.class));
+      return INVOKE_HANDLE.bindTo(handle);
+    } catch(ReflectiveOperationException | RuntimeException exc){
+      throw new IllegalArgumentException("@Subscribe method "+method.getDeclaringClass().getName()+"."+method.getName()+" is not accessible", exc);
+    }
+  }
+
+  /// Generated Consumers can only call public methods of public classes (and with public parameter types)
+  private static boolean isAccessible(Method method){
+    if(!Modifier.isPublic(method.getModifiers())) return false;
+
+    for(Class<?> cls = method.getDeclaringClass(); cls != null; cls = cls.getEnclosingClass())
+      if(!Modifier.isPublic(cls.getModifiers())) return false;
+
+    for(Class<?> cls = method.getParameterTypes()[0]; cls != null; cls = cls.getEnclosingClass())
+      if(!Modifier.isPublic(cls.getModifiers())) return false;
+
+    return true;
+  }
+
+  private static Consumer<Object> invokeHandle(MethodHandle handle, Object subscriber){
+    return (Object payload) -> {
+      try {
+        handle.invokeExact(subscriber, payload);
+      } catch(RuntimeException | Error exc){
+        throw exc;
+      } catch(Throwable exc){
+        throw new RuntimeException(exc);
+      }
+    };
+  }
+}
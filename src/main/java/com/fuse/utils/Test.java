@@ -1,10 +1,14 @@
 package com.fuse.utils;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 public class Test <T> {
@@ -14,6 +18,7 @@ public class Test <T> {
 	private List<Mod> modQueue;
 	private List<Test<T>> forwardEvents;
 	private Predicate<T> forwarder;
+	private VerdictCache verdictCache = null;
 
 	private class Mod {
 		public Predicate<T> addListener;
@@ -35,6 +40,56 @@ public class Test <T> {
 		}
 	};
 
+	/** Bounded LRU of test verdicts, by argument (or by extracted key) */
+	private class VerdictCache extends LinkedHashMap<Object, long[]> {
+		private static final long serialVersionUID = 1L;
+		private int maxSize;
+		private Function<T, ?> keyExtractor;
+		private long ttlNanos;
+		/** incremented by every invalidation; verdicts evaluated across an invalidation aren't stored */
+		private long version = 0;
+
+		public VerdictCache(int maxSize, Function<T, ?> keyExtractor, long ttlNanos){
+			super(16, 0.75f, true); // access-order
+			this.maxSize = maxSize;
+			this.keyExtractor = keyExtractor;
+			this.ttlNanos = ttlNanos;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Object, long[]> eldest){
+			return size() > maxSize;
+		}
+
+		public Object key(T arg){
+			return keyExtractor == null ? arg : keyExtractor.apply(arg);
+		}
+
+		/** @return Boolean The cached verdict, null if there is none (or it expired) */
+		public Boolean lookup(Object key){
+			// {verdict (0/1), time of evaluation}
+			long[] entry = get(key);
+			if(entry == null) return null;
+
+			if(ttlNanos > 0 && System.nanoTime() - entry[1] >= ttlNanos){
+				remove(key);
+				return null;
+			}
+
+			return entry[0] == 1;
+		}
+
+		public void store(Object key, boolean verdict, long version){
+			if(version == this.version)
+				put(key, new long[]{ verdict ? 1 : 0, System.nanoTime() });
+		}
+
+		public void invalidate(){
+			version++;
+			clear();
+		}
+	}
+
 	public Test() {
 		// initialize empty list of listeners
 		listeners = new IdentityHashMap<Object, List<Predicate<T>>>();
@@ -66,6 +121,30 @@ public class Test <T> {
 
 		// add to owner collection
 		listeners.get(owner).add(newListener);
+		invalidateVerdicts();
+	}
+
+	/**
+	 * Registers many listeners at once (with a single cache invalidation)
+	 * @param newListeners The listeners to register
+	 * @param owner Owner of the new listeners
+	 */
+	public void addListeners(Collection<? extends Predicate<T>> newListeners, Object owner){
+		// queue operations if locked
+		if(isTesting()){
+			for(Predicate<T> l : newListeners)
+				modQueue.add(new Mod(l, owner));
+			return;
+		}
+
+		List<Predicate<T>> ownerListeners = listeners.get(owner);
+		if(ownerListeners == null){
+			ownerListeners = new ArrayList<Predicate<T>>(newListeners.size());
+			listeners.put(owner, ownerListeners);
+		}
+
+		ownerListeners.addAll(newListeners);
+		invalidateVerdicts();
 	}
 
 	public void addOnceListener(Predicate<T> newListener){
@@ -94,11 +173,44 @@ public class Test <T> {
             		it.remove();
             }
 		}
+
+		onceListeners.removeIf((Predicate<T> l) -> l == listener);
+		invalidateVerdicts();
+	}
+
+	/**
+	 * Removes many listeners at once, in a single pass over all registered listeners.
+	 * Not an overload of removeListeners, which removes by owner (like Event.removeListeners
+	 * does); an owner can be a collection. Event has no counterpart, it removes many
+	 * listeners at once using batch().
+	 * @param listenersToRemove The listeners to remove
+	 */
+	public void removeAllListeners(Collection<? extends Predicate<T>> listenersToRemove){
+		// queue operations if locked
+		if(isTesting()){
+			for(Predicate<T> l : listenersToRemove)
+				modQueue.add(new Mod(l));
+			return;
+		}
+
+		Map<Predicate<T>, Boolean> remove = new IdentityHashMap<Predicate<T>, Boolean>();
+		for(Predicate<T> l : listenersToRemove)
+			remove.put(l, Boolean.TRUE);
+
+		for (Map.Entry<Object, List<Predicate<T>>> pair : listeners.entrySet())
+			pair.getValue().removeIf((Predicate<T> l) -> remove.containsKey(l));
+
+		onceListeners.removeIf((Predicate<T> l) -> remove.containsKey(l));
+		invalidateVerdicts();
 	}
 
 	public void removeListeners(Object owner){
 		if(!isTesting()){
-			listeners.remove(owner);
+			List<Predicate<T>> removed = listeners.remove(owner);
+			if(removed != null)
+				for(Predicate<T> l : removed)
+					onceListeners.removeIf((Predicate<T> o) -> o == l);
+			invalidateVerdicts();
 			return;
 		}
 
@@ -107,7 +219,65 @@ public class Test <T> {
 		modQueue.add(m);
 	}
 
+	/**
+	 * Enables caching of test verdicts by argument, see enableVerdictCache(int, Function, long, TimeUnit)
+	 * @param maxSize Maximum number of cached verdicts
+	 */
+	public void enableVerdictCache(int maxSize){
+		enableVerdictCache(maxSize, null, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Enables caching of test verdicts; repeated tests with the same argument (or key) return
+	 * the cached verdict without invoking the listeners. The least recently used verdicts are
+	 * dropped when the cache is full and all verdicts are dropped whenever listeners are added
+	 * or removed (also those of a test that is forwarded to this test). The cache is bypassed
+	 * while there are once-listeners registered.
+	 *
+	 * @param maxSize Maximum number of cached verdicts
+	 * @param keyExtractor Determines the cache key for an argument (null to use the argument itself, which needs proper equals/hashCode)
+	 * @param ttl Maximum age of a cached verdict, for listeners that depend on changing external state (0 for no expiry)
+	 * @param unit Unit of the ttl
+	 */
+	public void enableVerdictCache(int maxSize, Function<T, ?> keyExtractor, long ttl, TimeUnit unit){
+		verdictCache = new VerdictCache(Math.max(1, maxSize), keyExtractor, unit.toNanos(ttl));
+	}
+
+	public void disableVerdictCache(){
+		verdictCache = null;
+	}
+
+	/**
+	 * Drops all cached verdicts, for example when state that listeners depend on changed.
+	 * Also drops the verdicts of the tests this test forwards to, as their verdicts include this test's.
+	 */
+	public void invalidateVerdicts(){
+		if(verdictCache != null)
+			verdictCache.invalidate();
+
+		for(Test<T> other : forwardEvents)
+			other.invalidateVerdicts();
+	}
+
 	public boolean test(T arg){
+		VerdictCache cache = this.verdictCache;
+
+		// once-listeners have to be invoked (and removed) by an actual test
+		if(cache == null || !onceListeners.isEmpty())
+			return evaluate(arg);
+
+		Object key = cache.key(arg);
+		Boolean cached = cache.lookup(key);
+		if(cached != null)
+			return cached;
+
+		long version = cache.version;
+		boolean verdict = evaluate(arg);
+		cache.store(key, verdict, version);
+		return verdict;
+	}
+
+	private boolean evaluate(T arg){
 		// count the number of (recursive) tests
 		activeTestCount++;
 
@@ -129,9 +299,11 @@ public class Test <T> {
 
 		// remove all the listeners that should only be called once
 		for(Predicate<T> listener : onceListeners){
-			removeListener(listener); // also removes from onceListeners
+			removeListener(listener);
 		}
 
+		onceListeners.clear();
+
 		// this test is done, "uncount" it
 		activeTestCount--;
 
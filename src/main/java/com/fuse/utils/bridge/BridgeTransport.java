@@ -0,0 +1,31 @@
+package com.fuse.utils.bridge;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Moves encoded event payloads between processes, used by EventBridge.
+ */
+public interface BridgeTransport {
+  /**
+   * Writes a single record (the bytes between the buffer's position and limit).
+   * Records may be buffered until flush() is called.
+   * @param record The encoded payload
+   */
+  void send(ByteBuffer record);
+
+  /** Makes all sent records visible to the other side */
+  void flush();
+
+  /**
+   * Passes all available records to the given consumer. When no records are
+   * available, waits (at most about the given time) for new records.
+   * The buffers given to the consumer are only valid during the call.
+   * @param consumer Receives the records
+   * @param maxWaitNanos Maximum time to wait for records when none are available
+   * @return int The number of records received
+   */
+  int receive(Consumer<ByteBuffer> consumer, long maxWaitNanos);
+
+  void close();
+}
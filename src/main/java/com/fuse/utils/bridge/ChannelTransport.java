@@ -0,0 +1,117 @@
+package com.fuse.utils.bridge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.io.StreamCorruptedException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * BridgeTransport over a pair of (blocking) byte channels, as fallback for the
+ * MappedRingTransport. Records are framed with a 4 byte length and buffered
+ * until flush(). On Java 16+ Unix domain socket channels can be used
+ * (SocketChannel.open(UnixDomainSocketAddress.of(path))); this library targets
+ * Java 1.8, so it doesn't open those itself.
+ */
+public class ChannelTransport implements BridgeTransport {
+  private ReadableByteChannel input;
+  private WritableByteChannel output;
+  private ByteBuffer writeBuffer;
+  private ByteBuffer readBuffer;
+
+  public ChannelTransport(ReadableByteChannel input, WritableByteChannel output){
+    this(input, output, 64 * 1024);
+  }
+
+  /**
+   * @param input Channel to receive records from
+   * @param output Channel to send records to
+   * @param bufferSize Size of the read and write buffers (the maximum record size)
+   */
+  public ChannelTransport(ReadableByteChannel input, WritableByteChannel output, int bufferSize){
+    this.input = input;
+    this.output = output;
+    this.writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+    this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  @Override
+  public synchronized void send(ByteBuffer record){
+    int len = record.remaining();
+    if(4 + len > writeBuffer.capacity())
+      throw new IllegalArgumentException("Record of "+Integer.toString(len)+" bytes doesn't fit the transport's buffer");
+
+    if(writeBuffer.remaining() < 4 + len)
+      flush();
+
+    writeBuffer.putInt(len);
+    writeBuffer.put(record);
+  }
+
+  @Override
+  public synchronized void flush(){
+    writeBuffer.flip();
+
+    try {
+      while(writeBuffer.hasRemaining())
+        output.write(writeBuffer);
+    } catch(IOException exc){
+      throw new UncheckedIOException(exc);
+    } finally {
+      writeBuffer.clear();
+    }
+  }
+
+  /**
+   * Blocks until data arrives (maxWaitNanos is not supported by blocking channels)
+   * @throws UncheckedIOException When the channel is closed or a record has an invalid length (StreamCorruptedException)
+   */
+  @Override
+  public int receive(Consumer<ByteBuffer> consumer, long maxWaitNanos){
+    try {
+      if(input.read(readBuffer) < 0)
+        throw new ClosedChannelException();
+    } catch(IOException exc){
+      throw new UncheckedIOException(exc);
+    }
+
+    readBuffer.flip();
+    int count = 0;
+
+    while(readBuffer.remaining() >= 4){
+      int len = readBuffer.getInt(readBuffer.position());
+
+      // a record that can never fit the buffer would make us wait (and spin) forever
+      if(len < 0 || len > readBuffer.capacity() - 4){
+        readBuffer.clear();
+        throw new UncheckedIOException(new StreamCorruptedException("Invalid record length "+Integer.toString(len)+" (buffer size "+Integer.toString(readBuffer.capacity())+")"));
+      }
+
+      if(readBuffer.remaining() < 4 + len) break; // incomplete record
+
+      int end = readBuffer.position() + 4 + len;
+      ByteBuffer record = readBuffer.duplicate();
+      record.position(readBuffer.position() + 4);
+      record.limit(end);
+      consumer.accept(record);
+      readBuffer.position(end);
+      count++;
+    }
+
+    readBuffer.compact();
+    return count;
+  }
+
+  @Override
+  public void close(){
+    try {
+      input.close();
+      output.close();
+    } catch(IOException exc){
+      throw new UncheckedIOException(exc);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.fuse.utils.bridge;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import com.fuse.utils.Event;
+import com.fuse.utils.EventCodec;
+
+/**
+ * Mirrors an Event between processes on the same machine. Local triggers are
+ * encoded and sent through the transport; a reader thread decodes records
+ * from the other process and triggers the local event with them, so local
+ * listeners observe remote triggers just like local ones.
+ *
+ * Triggers done by the reader thread (remote payloads and anything local
+ * listeners trigger while handling them) are not sent back.
+ *
+ * Exceptions thrown while decoding or dispatching a remote payload are
+ * reported to the error event and the reader continues with the next record;
+ * transport errors (other than the transport being closed by stop()) are
+ * reported as well, after which the reader stops.
+ */
+public class EventBridge<T> {
+  private Event<T> event;
+  private EventCodec<T> codec;
+  private BridgeTransport transport;
+  private ByteBuffer encodeBuffer;
+  private Consumer<T> sender;
+  private Thread reader = null;
+  private volatile boolean running = false;
+  private int batchDepth = 0;
+  private volatile Event<RuntimeException> errorEvent = null;
+
+  public EventBridge(Event<T> event, EventCodec<T> codec, BridgeTransport transport){
+    this(event, codec, transport, 64 * 1024);
+  }
+
+  /**
+   * @param event The event to mirror
+   * @param codec Codec for the event's payloads
+   * @param transport Transport to the other process
+   * @param maxRecordSize Maximum size of an encoded payload
+   */
+  public EventBridge(Event<T> event, EventCodec<T> codec, BridgeTransport transport, int maxRecordSize){
+    this.event = event;
+    this.codec = codec;
+    this.transport = transport;
+    this.encodeBuffer = ByteBuffer.allocateDirect(maxRecordSize);
+    this.sender = (Event.InlineListener<T>)(T payload) -> {
+      if(Thread.currentThread() == reader) return; // remote payload
+      send(payload);
+    };
+  }
+
+  /** Starts mirroring; registers the sending listener and starts the reader thread */
+  public void start(){
+    if(running) return;
+    running = true;
+
+    event.addListener(sender, this);
+
+    reader = new Thread(() -> {
+      Consumer<ByteBuffer> dispatcher = (ByteBuffer record) -> {
+        try {
+          event.trigger(codec.decode(record));
+        } catch(RuntimeException exc){
+          // a failing listener (or codec) shouldn't stop the mirroring
+          reportError(exc);
+        }
+      };
+
+      while(running){
+        try {
+          transport.receive(dispatcher, 100000000L);
+        } catch(java.io.UncheckedIOException exc){
+          // transport closed or broken; nothing more to receive
+          if(running) reportError(exc);
+          return;
+        }
+      }
+    }, "EventBridge reader");
+
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Returns the (lazily created) event that is triggered, on the reader thread, with
+   * exceptions thrown while handling remote payloads and with transport errors
+   * @return Event The error event
+   */
+  public synchronized Event<RuntimeException> getErrorEvent(){
+    if(errorEvent == null)
+      errorEvent = new Event<>();
+    return errorEvent;
+  }
+
+  private void reportError(RuntimeException exc){
+    Event<RuntimeException> errors = this.errorEvent;
+    if(errors != null)
+      errors.trigger(exc);
+  }
+
+  /** Stops mirroring and closes the transport */
+  public void stop(){
+    if(!running) return;
+    running = false;
+    event.removeListeners(this);
+    transport.close();
+
+    try {
+      reader.join(1000);
+    } catch(InterruptedException exc){
+      Thread.currentThread().interrupt();
+    }
+
+    reader = null;
+  }
+
+  /**
+   * Runs the given logic and makes all payloads it triggers visible to the
+   * other process at once, instead of one by one
+   * @param func The logic that triggers the event (multiple times)
+   */
+  public void batch(Runnable func){
+    synchronized(this){ batchDepth++; }
+
+    try {
+      func.run();
+    } finally {
+      synchronized(this){
+        batchDepth--;
+        if(batchDepth == 0) transport.flush();
+      }
+    }
+  }
+
+  private synchronized void send(T payload){
+    encodeBuffer.clear();
+    codec.encode(payload, encodeBuffer);
+    encodeBuffer.flip();
+    transport.send(encodeBuffer);
+
+    if(batchDepth == 0)
+      transport.flush();
+  }
+}
@@ -0,0 +1,104 @@
+package com.fuse.utils.bridge;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for data that is shared with other processes through mapped
+ * memory, where volatile fields can't be used. Uses the fences of VarHandle
+ * (Java 9+) or sun.misc.Unsafe (Java 8), looked up reflectively because this
+ * library is compiled for Java 1.8. Without either, a volatile access is used,
+ * which only orders accesses on runtimes that implement it with a full fence.
+ */
+final class Fences {
+  /** loads before the fence are not reordered with loads and stores after it */
+  private static final MethodHandle ACQUIRE;
+  /** loads and stores before the fence are not reordered with stores after it */
+  private static final MethodHandle RELEASE;
+  /** loads and stores before the fence are not reordered with loads and stores after it */
+  private static final MethodHandle FULL;
+
+  private static volatile int fallback = 0;
+
+  static {
+    MethodHandle acquire = null;
+    MethodHandle release = null;
+    MethodHandle full = null;
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    MethodType type = MethodType.methodType(void.class);
+
+    try {
+      Class<?> varHandle = Class.forName("java.lang.invoke.VarHandle");
+      acquire = lookup.findStatic(varHandle, "acquireFence", type);
+      release = lookup.findStatic(varHandle, "releaseFence", type);
+      full = lookup.findStatic(varHandle, "fullFence", type);
+    } catch(ReflectiveOperationException | RuntimeException exc){
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field field = unsafeClass.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        Object unsafe = field.get(null);
+        acquire = lookup.findVirtual(unsafeClass, "loadFence", type).bindTo(unsafe);
+        release = lookup.findVirtual(unsafeClass, "storeFence", type).bindTo(unsafe);
+        full = lookup.findVirtual(unsafeClass, "fullFence", type).bindTo(unsafe);
+      } catch(ReflectiveOperationException | RuntimeException exc2){
+        acquire = null;
+        release = null;
+        full = null;
+      }
+    }
+
+    ACQUIRE = acquire;
+    RELEASE = release;
+    FULL = full;
+  }
+
+  private Fences(){}
+
+  /** @return boolean False when the volatile fallback is used */
+  static boolean isAvailable(){
+    return ACQUIRE != null;
+  }
+
+  static void acquire(){
+    if(ACQUIRE == null){
+      int f = fallback;
+      return;
+    }
+
+    try {
+      ACQUIRE.invokeExact();
+    } catch(Throwable t){
+      throw new IllegalStateException(t);
+    }
+  }
+
+  static void release(){
+    if(RELEASE == null){
+      fallback = 0;
+      return;
+    }
+
+    try {
+      RELEASE.invokeExact();
+    } catch(Throwable t){
+      throw new IllegalStateException(t);
+    }
+  }
+
+  static void full(){
+    if(FULL == null){
+      fallback = 0;
+      int f = fallback;
+      return;
+    }
+
+    try {
+      FULL.invokeExact();
+    } catch(Throwable t){
+      throw new IllegalStateException(t);
+    }
+  }
+}
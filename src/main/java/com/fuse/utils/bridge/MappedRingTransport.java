@@ -0,0 +1,362 @@
+package com.fuse.utils.bridge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * BridgeTransport over two memory-mapped ring files; one that only this
+ * process writes records to and one that only the other process writes records to.
+ *
+ * Ring layout: a 192 byte header followed by the data area. The header holds
+ * the magic and capacity at offset 0; the writer's fields (the total number of
+ * bytes ever published at offset 64, the total number of bytes claimed at
+ * offset 72 and the sequence of the next record at offset 80) and, on their own
+ * cache line, the reader's fields (a waiting flag at offset 128 and the port of
+ * its wakeup socket at offset 132). Records are an 8 byte header (payload length
+ * + 1, or -1 for "continue at the start of the data area", and the record's
+ * sequence number) followed by the payload, padded to 4 bytes.
+ *
+ * The writer never waits for readers; a reader that falls behind more than
+ * the ring's capacity skips the overwritten records (see getLostRecords).
+ * Before writing a record the writer publishes the claimed position (which can
+ * be ahead of the published position while records are sent but not yet
+ * flushed); after copying a record the reader checks the claimed position
+ * again, so records the writer started to overwrite during the copy are
+ * detected (like a seqlock) instead of being handed to the consumer torn.
+ * The accesses are ordered by fences (see Fences).
+ *
+ * Java can't block on a change in mapped memory, so idle readers are woken
+ * futex-style: a reader that found nothing for spinCount polls sets its waiting
+ * flag, checks the published position once more and then blocks on a loopback
+ * datagram socket; a flush that sees the flag sends it a (one byte) datagram.
+ * While the reader spins, records are picked up within microseconds; a blocked
+ * reader is woken within the latency of a loopback datagram (typically tens of
+ * microseconds, depending on the OS scheduler).
+ */
+public class MappedRingTransport implements BridgeTransport {
+  private static final int MAGIC = 0x52494E33; // "RIN3"
+  private static final int WRITE_POSITION_OFFSET = 64;
+  private static final int CLAIM_POSITION_OFFSET = 72;
+  private static final int SEQUENCE_OFFSET = 80;
+  private static final int READER_WAITING_OFFSET = 128;
+  private static final int READER_PORT_OFFSET = 132;
+  private static final int DATA_OFFSET = 192;
+  private static final int RECORD_HEADER = 8;
+  private static final int PADDING = -1;
+
+  private Path outPath;
+  private Path inPath;
+  private int capacity;
+
+  private MappedByteBuffer out = null;
+  private long writePosition = 0;
+  private int writeSequence = 0;
+  /** sends wakeup datagrams to a waiting reader; created on first use */
+  private DatagramSocket signalSocket = null;
+  private DatagramPacket signal = null;
+
+  private volatile boolean closed = false;
+  private volatile MappedByteBuffer in = null;
+  private int inCapacity = 0;
+  private long readPosition = 0;
+  /** sequence of the next record */
+  private int readSequence = 0;
+  private ByteBuffer readScratch = null;
+  private volatile long lostRecords = 0;
+  /** receives the wakeup datagrams while this reader waits */
+  private volatile DatagramSocket wakeupSocket = null;
+  private DatagramPacket wakeup = new DatagramPacket(new byte[1], 1);
+
+  private int spinCount = 100;
+  private long maxParkNanos = 100000000L;
+
+  /**
+   * @param outPath Ring file this process writes to (created if necessary)
+   * @param inPath Ring file the other process writes to
+   * @param capacity Size of the data area of the outgoing ring in bytes
+   */
+  public MappedRingTransport(Path outPath, Path inPath, int capacity){
+    this.outPath = outPath;
+    this.inPath = inPath;
+    this.capacity = (capacity + 7) & ~7;
+    // create the outgoing ring right away, so the other side can attach before the first record
+    openOut();
+  }
+
+  /**
+   * Configures how idle readers wait for new records
+   * @param spinCount Number of busy polls before blocking until the writer signals
+   * @param maxParkNanos Maximum time to block before polling again (only a safety net, writers signal waiting readers)
+   * @return MappedRingTransport This transport, for chaining
+   */
+  public MappedRingTransport setIdleStrategy(int spinCount, long maxParkNanos){
+    this.spinCount = spinCount;
+    this.maxParkNanos = maxParkNanos;
+    return this;
+  }
+
+  /** @return boolean True once the incoming ring is mapped; only records sent after that are received */
+  public boolean isAttached(){
+    return in != null;
+  }
+
+  /**
+   * @return long The number of records that were overwritten before they could be read
+   * (skipped records are counted when the first record after them is read)
+   */
+  public long getLostRecords(){
+    return lostRecords;
+  }
+
+  @Override
+  public synchronized void send(ByteBuffer record){
+    if(out == null) throw new IllegalStateException("Transport is closed");
+
+    int len = record.remaining();
+    int size = RECORD_HEADER + ((len + 3) & ~3);
+    if(size > capacity)
+      throw new IllegalArgumentException("Record of "+Integer.toString(len)+" bytes doesn't fit in a ring of "+Integer.toString(capacity)+" bytes");
+
+    int idx = (int)(writePosition % capacity);
+    int padding = capacity - idx < size ? capacity - idx : 0;
+
+    // claim the bytes before overwriting them, so readers can detect overwrites during their copy
+    out.putLong(CLAIM_POSITION_OFFSET, writePosition + padding + size);
+    Fences.release();
+
+    if(padding > 0){
+      // not enough room before the end of the data area; continue at the start
+      out.putInt(DATA_OFFSET + idx, PADDING);
+      writePosition += padding;
+      idx = 0;
+    }
+
+    ByteBuffer dst = out.duplicate();
+    dst.position(DATA_OFFSET + idx + RECORD_HEADER);
+    dst.put(record);
+    out.putInt(DATA_OFFSET + idx + 4, writeSequence++);
+    out.putInt(DATA_OFFSET + idx, len + 1);
+    writePosition += size;
+  }
+
+  @Override
+  public synchronized void flush(){
+    if(out == null) return;
+    out.putInt(SEQUENCE_OFFSET, writeSequence);
+    Fences.release(); // the records (and sequence) are written before the position is published
+    out.putLong(WRITE_POSITION_OFFSET, writePosition);
+
+    // (the reader sets its flag before checking the position once more; see await)
+    Fences.full();
+    if(out.getInt(READER_WAITING_OFFSET) != 0)
+      signalReader(out.getInt(READER_PORT_OFFSET));
+  }
+
+  /// Wakes the reader that's blocked on its wakeup socket
+  private void signalReader(int port){
+    if(port == 0) return;
+
+    try {
+      if(signalSocket == null){
+        signalSocket = new DatagramSocket();
+        signal = new DatagramPacket(new byte[1], 1, InetAddress.getLoopbackAddress(), port);
+      }
+
+      signal.setPort(port);
+      signalSocket.send(signal);
+    } catch(IOException exc){
+      // the reader still polls after maxParkNanos
+    }
+  }
+
+  @Override
+  public int receive(Consumer<ByteBuffer> consumer, long maxWaitNanos){
+    if(closed) return 0;
+
+    if(in == null && !openIn()){
+      LockSupport.parkNanos(Math.min(maxWaitNanos, maxParkNanos));
+      return 0;
+    }
+
+    MappedByteBuffer in = this.in;
+
+    long deadline = System.nanoTime() + maxWaitNanos;
+    int idle = 0;
+
+    while(true){
+      int count = drain(in, consumer);
+      if(count > 0) return count;
+
+      long now = System.nanoTime();
+      if(closed || now >= deadline) return 0;
+
+      if(idle++ < spinCount)
+        continue;
+
+      await(in, Math.min(deadline - now, maxParkNanos));
+    }
+  }
+
+  /// Blocks until the writer signals (or the given time passed), unless records were published in the meantime
+  private void await(MappedByteBuffer in, long nanos){
+    in.putInt(READER_WAITING_OFFSET, 1);
+    // (the writer publishes the position before checking the flag; see flush)
+    Fences.full();
+
+    try {
+      if(in.getLong(WRITE_POSITION_OFFSET) != readPosition || closed)
+        return;
+
+      DatagramSocket socket = wakeupSocket;
+      socket.setSoTimeout((int)Math.max(1, Math.min(Integer.MAX_VALUE, nanos / 1000000L)));
+      socket.receive(wakeup);
+    } catch(SocketTimeoutException exc){
+      // poll again
+    } catch(IOException exc){
+      if(!closed) throw new UncheckedIOException(exc);
+    } finally {
+      in.putInt(READER_WAITING_OFFSET, 0);
+    }
+  }
+
+  /// Reads all records up to the published write position
+  private int drain(MappedByteBuffer in, Consumer<ByteBuffer> consumer){
+    long published = in.getLong(WRITE_POSITION_OFFSET);
+    Fences.acquire(); // don't read records before the position
+    int count = 0;
+
+    while(readPosition < published){
+      if(in.getLong(CLAIM_POSITION_OFFSET) - readPosition > inCapacity){
+        // the writer lapped us; the sequence of the next record we read tells how many were lost
+        readPosition = published;
+        break;
+      }
+
+      int idx = (int)(readPosition % inCapacity);
+      int header = in.getInt(DATA_OFFSET + idx);
+
+      if(header == PADDING){
+        readPosition += inCapacity - idx;
+        continue;
+      }
+
+      // (a torn header is caught by the claim check below)
+      int len = header - 1;
+      int sequence = in.getInt(DATA_OFFSET + idx + 4);
+      boolean valid = len >= 0 && RECORD_HEADER + len <= inCapacity - idx;
+
+      if(valid){
+        if(readScratch == null || readScratch.capacity() < len)
+          readScratch = ByteBuffer.allocateDirect(Math.max(len, 4096));
+
+        ByteBuffer src = in.duplicate();
+        src.limit(DATA_OFFSET + idx + RECORD_HEADER + len);
+        src.position(DATA_OFFSET + idx + RECORD_HEADER);
+        readScratch.clear();
+        readScratch.put(src);
+        readScratch.flip();
+      }
+
+      // verify the writer didn't claim (and start overwriting) the record's bytes while copying it
+      Fences.acquire();
+      if(!valid || in.getLong(CLAIM_POSITION_OFFSET) - readPosition > inCapacity){
+        readPosition = in.getLong(WRITE_POSITION_OFFSET);
+        break;
+      }
+
+      // records between the expected and this record's sequence were overwritten
+      // (the sequence read when attaching can be ahead of the position; that isn't a loss)
+      int skipped = sequence - readSequence;
+      if(skipped > 0) lostRecords += skipped;
+      readSequence = sequence + 1;
+
+      readPosition += RECORD_HEADER + ((len + 3) & ~3);
+      consumer.accept(readScratch);
+      count++;
+    }
+
+    return count;
+  }
+
+  @Override
+  public synchronized void close(){
+    closed = true;
+    if(out != null) out.force();
+    out = null;
+    in = null;
+
+    if(wakeupSocket != null) wakeupSocket.close(); // (wakes a blocked reader)
+    if(signalSocket != null) signalSocket.close();
+    signalSocket = null;
+  }
+
+  private void openOut(){
+    try(FileChannel channel = FileChannel.open(outPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+      boolean existing = channel.size() == DATA_OFFSET + capacity;
+      out = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET + capacity);
+
+      if(existing && out.getInt(0) == MAGIC && out.getInt(4) == capacity){
+        // continue the ring of a previous run
+        writePosition = out.getLong(WRITE_POSITION_OFFSET);
+        writeSequence = out.getInt(SEQUENCE_OFFSET);
+        out.putLong(CLAIM_POSITION_OFFSET, writePosition);
+      } else {
+        out.putLong(WRITE_POSITION_OFFSET, 0);
+        out.putLong(CLAIM_POSITION_OFFSET, 0);
+        out.putInt(SEQUENCE_OFFSET, 0);
+        out.putInt(READER_WAITING_OFFSET, 0);
+        out.putInt(READER_PORT_OFFSET, 0);
+        out.putInt(4, capacity);
+        out.putInt(0, MAGIC);
+      }
+    } catch(IOException exc){
+      throw new UncheckedIOException(exc);
+    }
+  }
+
+  /// Maps the incoming ring once the other process created it; only new records are read
+  private boolean openIn(){
+    if(!Files.exists(inPath)) return false;
+
+    // (read-write; the reader's waiting flag and wakeup port are in the incoming ring's header)
+    try(FileChannel channel = FileChannel.open(inPath, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+      if(channel.size() <= DATA_OFFSET) return false;
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+      if(buffer.getInt(0) != MAGIC) return false;
+
+      DatagramSocket socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      buffer.putInt(READER_WAITING_OFFSET, 0);
+      buffer.putInt(READER_PORT_OFFSET, socket.getLocalPort());
+
+      inCapacity = buffer.getInt(4);
+      readPosition = buffer.getLong(WRITE_POSITION_OFFSET);
+      Fences.acquire();
+      readSequence = buffer.getInt(SEQUENCE_OFFSET);
+      wakeupSocket = socket;
+      in = buffer;
+
+      // closed concurrently; close() didn't see the socket yet
+      if(closed){
+        socket.close();
+        in = null;
+      }
+
+      return true;
+    } catch(IOException exc){
+      throw new UncheckedIOException(exc);
+    }
+  }
+}
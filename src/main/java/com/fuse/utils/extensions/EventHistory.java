@@ -1,36 +1,83 @@
 package com.fuse.utils.extensions;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import com.fuse.utils.Event;
 
 public class EventHistory<T> extends EventExtension<T> {
-  private List<T> history = null;
+  private HistoryStore<T> store;
 
   public EventHistory(Event<T> event){
+    this(event, new MemoryHistoryStore<T>());
+  }
+
+  public EventHistory(Event<T> event, HistoryStore<T> store){
     super(event);
+    this.store = store;
   }
 
   @Override
   protected void setup(){
-    if(history == null)
-      history = new ArrayList<>();
-
-    event.addListener((T value) -> { history.add(value); }, this);
+    event.addListener((Event.InlineListener<T>)(T value) -> {
+      if(event.isTriggerStamped())
+        store.append(value, event.getTriggerSequence(), event.getTriggerNanos());
+      else
+        store.append(value);
+    }, this);
   }
 
   @Override
   protected void destroy(){
     event.removeListeners(this);
+    store.close();
+  }
 
-    if(history != null){
-      history.clear();
-      history = null;
-    }
+  public HistoryStore<T> getStore(){
+    return store;
   }
 
   public List<T> getValues(){
-    return history == null ? new ArrayList<>() : history;
+    return store.getValues();
+  }
+
+  /**
+   * @param fromSequence Sequence of the first value to return
+   * @return HistorySpliterator Cursor over the recorded values, starting at the given sequence
+   */
+  public HistorySpliterator<T> spliterator(long fromSequence){
+    return new HistorySpliterator<T>(store, fromSequence);
+  }
+
+  /**
+   * Streams all recorded values (in chunks) to the given consumer,
+   * values recorded while streaming are not included.
+   * @param func Consumer that receives the values
+   */
+  public void forEachValue(Consumer<T> func){
+    long seq = store.firstSequence();
+    long end = store.nextSequence();
+
+    while(seq < end){
+      long next = store.read(seq, (int)Math.min(1024, end - seq), func);
+      if(next == seq) return;
+      seq = next;
+    }
+  }
+
+  /**
+   * Streams the recorded values starting at the given sequence, along with their
+   * trigger stamps, to the given consumer (including values recorded while streaming)
+   * @param fromSequence Sequence of the first value
+   * @param func Consumer that receives the values and their stamps
+   */
+  public void forEachStamped(long fromSequence, HistoryStore.StampedConsumer<T> func){
+    long seq = fromSequence;
+
+    while(true){
+      long next = store.readStamped(seq, 1024, func);
+      if(next == seq) return;
+      seq = next;
+    }
   }
 }
@@ -0,0 +1,210 @@
+package com.fuse.utils.extensions;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import com.fuse.utils.Event;
+import com.fuse.utils.ListenerDispatchException;
+
+/**
+ * Invokes listeners on the executor they were registered with (like a render
+ * or I/O thread). Every executor gets a single lane listener on the event,
+ * which queues the payloads; all payloads that are queued before the executor
+ * gets to run the lane are delivered to all of the lane's listeners by a single task.
+ *
+ * Listener exceptions don't stop the delivery, they're thrown (to the executor)
+ * as a ListenerDispatchException after the batch.
+ */
+public class ExecutorDispatcher<T> extends EventExtension<T> {
+  /** stands in for null payloads */
+  private static final Object NULL = new Object();
+
+  private class Lane implements Event.InlineListener<T> {
+    final Executor executor;
+    /** (copy-on-write) listeners and owners, read by the executor */
+    volatile Object[] entries = new Object[0];
+    final Queue<Object> payloads = new ConcurrentLinkedQueue<>();
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = this::drain;
+
+    Lane(Executor executor){
+      this.executor = executor;
+    }
+
+    /** invoked by the event on the triggering thread */
+    @Override
+    public void accept(T payload){
+      payloads.offer(payload == null ? NULL : payload);
+
+      if(scheduled.compareAndSet(false, true))
+        executor.execute(drainTask);
+    }
+
+    /** runs on the executor */
+    @SuppressWarnings("unchecked")
+    private void drain(){
+      List<Throwable> errors = null;
+      boolean drained = false;
+
+      try {
+        while(true){
+          Object item;
+
+          while((item = payloads.poll()) != null){
+            T payload = item == NULL ? null : (T)item;
+            Object[] ls = entries;
+
+            for(int i=0; i<ls.length; i+=2){
+              try {
+                ((Consumer<T>)ls[i]).accept(payload);
+              } catch(RuntimeException exc){
+                if(errors == null) errors = new ArrayList<>();
+                errors.add(exc);
+              }
+            }
+          }
+
+          scheduled.set(false);
+
+          // payloads that were queued after the last poll, but before scheduled was reset
+          if(payloads.isEmpty() || !scheduled.compareAndSet(false, true))
+            break;
+        }
+
+        drained = true;
+      } finally {
+        // an Error escaped a listener; let the next trigger schedule the (remaining) payloads again
+        if(!drained) scheduled.set(false);
+      }
+
+      if(errors != null)
+        throw new ListenerDispatchException(errors);
+    }
+
+    void add(Consumer<T> listener, Object owner){
+      Object[] current = entries;
+      Object[] updated = new Object[current.length + 2];
+      System.arraycopy(current, 0, updated, 0, current.length);
+      updated[current.length] = listener;
+      updated[current.length+1] = owner;
+      entries = updated;
+    }
+
+    /// Removes the entries that match the given listener (if not null) or owner, returns true if any was removed
+    boolean remove(Consumer<T> listener, Object owner){
+      Object[] current = entries;
+      List<Object> kept = new ArrayList<>(current.length);
+
+      for(int i=0; i<current.length; i+=2){
+        boolean match = listener != null ? current[i] == listener : current[i+1] == owner;
+        if(match) continue;
+        kept.add(current[i]);
+        kept.add(current[i+1]);
+      }
+
+      if(kept.size() == current.length) return false;
+      entries = kept.toArray();
+      return true;
+    }
+  }
+
+  private Map<Executor, Lane> lanes = new IdentityHashMap<>();
+
+  public ExecutorDispatcher(Event<T> event){
+    super(event);
+  }
+
+  /**
+   * Registers a listener that is invoked on the given executor
+   * @param listener The listener to register
+   * @param owner Owner of the listener
+   * @param executor The executor to invoke the listener on
+   */
+  public synchronized void add(Consumer<T> listener, Object owner, Executor executor){
+    Lane lane = lanes.get(executor);
+
+    if(lane == null){
+      lane = new Lane(executor);
+      lanes.put(executor, lane);
+      event.addListener(lane, this);
+    }
+
+    lane.add(listener, owner);
+  }
+
+  /**
+   * Removes a listener from all executors; payloads that were already queued
+   * are not delivered to it anymore.
+   * @param listener The listener to remove
+   */
+  public synchronized void remove(Consumer<T> listener){
+    removeEntries(listener, null);
+  }
+
+  /** @param owner Owner of the listeners to remove */
+  public synchronized void removeOwner(Object owner){
+    removeEntries(null, owner);
+  }
+
+  public synchronized boolean hasListener(Consumer<T> listener){
+    for(Lane lane : lanes.values())
+      for(int i=0; i<lane.entries.length; i+=2)
+        if(lane.entries[i] == listener) return true;
+    return false;
+  }
+
+  public synchronized boolean hasOwner(Object owner){
+    for(Lane lane : lanes.values())
+      for(int i=1; i<lane.entries.length; i+=2)
+        if(lane.entries[i] == owner) return true;
+    return false;
+  }
+
+  /** @return int Number of listeners registered with an executor */
+  public synchronized int size(){
+    int count = 0;
+    for(Lane lane : lanes.values())
+      count += lane.entries.length / 2;
+    return count;
+  }
+
+  /** @return int Number of listeners this extension registered on the event (one per executor) */
+  public synchronized int getLaneCount(){
+    return lanes.size();
+  }
+
+  private void removeEntries(Consumer<T> listener, Object owner){
+    List<Executor> emptied = null;
+
+    for(Lane lane : lanes.values()){
+      if(lane.remove(listener, owner) && lane.entries.length == 0){
+        if(emptied == null) emptied = new ArrayList<>();
+        emptied.add(lane.executor);
+      }
+    }
+
+    if(emptied == null) return;
+
+    // empty lanes don't need to receive payloads anymore
+    for(Executor executor : emptied)
+      event.removeListener(lanes.remove(executor));
+  }
+
+  @Override
+  protected synchronized void destroy(){
+    for(Lane lane : lanes.values()){
+      lane.entries = new Object[0];
+      lane.payloads.clear();
+    }
+
+    event.removeListeners(this);
+    lanes.clear();
+  }
+}
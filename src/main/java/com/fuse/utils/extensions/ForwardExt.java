@@ -13,7 +13,7 @@ public class ForwardExt<T> extends EventExtension<T> {
 
   public ForwardExt(Event<T> event){
     super(event);
-    forwarder = (T t) -> this.event.trigger(t);
+    forwarder = (Event.InlineListener<T>)(T t) -> this.event.trigger(t);
   }
 
   @Override
@@ -0,0 +1,59 @@
+package com.fuse.utils.extensions;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Cursor over the values of a HistoryStore, starting at a given sequence.
+ * Values are read from the store in chunks; the cursor keeps reading until
+ * it reaches the end of the store (including values appended while iterating).
+ */
+public class HistorySpliterator<T> implements Spliterator<T> {
+  private static final int CHUNK_SIZE = 1024;
+
+  private HistoryStore<T> store;
+  private long sequence;
+  private ArrayDeque<Object> chunk = new ArrayDeque<>();
+  /** stands in for null values; ArrayDeque doesn't take nulls */
+  private static final Object NULL = new Object();
+
+  public HistorySpliterator(HistoryStore<T> store, long fromSequence){
+    this.store = store;
+    this.sequence = fromSequence;
+  }
+
+  /** @return long Sequence of the next value this cursor will return */
+  public long getSequence(){
+    return sequence - chunk.size();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean tryAdvance(Consumer<? super T> action){
+    if(chunk.isEmpty()){
+      // (read skips values that are no longer retained)
+      sequence = store.read(sequence, CHUNK_SIZE, (T value) -> chunk.add(value == null ? NULL : value));
+      if(chunk.isEmpty()) return false;
+    }
+
+    Object value = chunk.poll();
+    action.accept(value == NULL ? null : (T)value);
+    return true;
+  }
+
+  @Override
+  public Spliterator<T> trySplit(){
+    return null; // history is replayed in order
+  }
+
+  @Override
+  public long estimateSize(){
+    return Math.max(0, store.nextSequence() - getSequence());
+  }
+
+  @Override
+  public int characteristics(){
+    return ORDERED;
+  }
+}
@@ -0,0 +1,71 @@
+package com.fuse.utils.extensions;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage backend of the EventHistory extension. Every appended value
+ * gets the next sequence number; stores may drop their oldest values
+ * (retention), so the first retained sequence can be larger than zero.
+ */
+public interface HistoryStore<T> {
+  /** Receives values along with the stamps of the triggers that recorded them */
+  @FunctionalInterface
+  interface StampedConsumer<T> {
+    void accept(T value, long triggerSequence, long triggerNanos);
+  }
+
+  void append(T value);
+
+  /**
+   * Appends a value along with the stamps of its trigger (see Event.enableTriggerStamps);
+   * stores that can't keep the stamps just append the value.
+   * @param value The value to append
+   * @param triggerSequence Sequence number of the trigger
+   * @param triggerNanos Time of the trigger (System.nanoTime), 0 when not captured
+   */
+  default void append(T value, long triggerSequence, long triggerNanos){
+    append(value);
+  }
+
+  /** @return long Sequence number of the oldest retained value */
+  long firstSequence();
+
+  /** @return long Sequence number the next appended value will get */
+  long nextSequence();
+
+  /**
+   * Reads up to max values, starting at the given sequence (or at the first
+   * retained sequence when the given sequence is no longer retained)
+   * @param fromSequence sequence of the first value to read
+   * @param max maximum number of values to read
+   * @param consumer receives the values
+   * @return long The sequence following the last value that was read
+   */
+  long read(long fromSequence, int max, Consumer<T> consumer);
+
+  /**
+   * Like read, but also delivers the trigger stamps of the values
+   * (-1 and 0 for values that were appended without stamps)
+   * @param fromSequence sequence of the first value to read
+   * @param max maximum number of values to read
+   * @param consumer receives the values and their stamps
+   * @return long The sequence following the last value that was read
+   */
+  default long readStamped(long fromSequence, int max, StampedConsumer<T> consumer){
+    return read(fromSequence, max, (T value) -> consumer.accept(value, -1, 0));
+  }
+
+  /**
+   * Returns all retained values as a list. Depending on the store this
+   * can mean loading all values into memory; prefer read() for large histories.
+   * @return List All retained values
+   */
+  List<T> getValues();
+
+  /** Removes all values */
+  void clear();
+
+  /** Releases the resources held by the store, the store re-opens when used again */
+  void close();
+}
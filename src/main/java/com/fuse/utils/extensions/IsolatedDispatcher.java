@@ -0,0 +1,280 @@
+package com.fuse.utils.extensions;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.fuse.utils.Event;
+import com.fuse.utils.ListenerDispatchException;
+
+/**
+ * Runs every listener invocation on its own thread (a virtual thread when the
+ * runtime supports them) and waits for each listener at most its timeout, so a
+ * listener that blocks (for example on I/O) can't stall the trigger for the
+ * other listeners and the producer. Timed-out listeners are interrupted,
+ * counted and optionally unsubscribed.
+ *
+ * A timed-out listener that ignores the interrupt keeps running after the trigger
+ * returned (a straggler), possibly concurrently with its invocations by later
+ * triggers. Stragglers are counted; once there are as many as the configured
+ * maximum, listener invocations are skipped (and counted) until stragglers
+ * finish, so hanging listeners can't make the number of threads grow without bound.
+ *
+ * Exceptions thrown by listeners are thrown as a single ListenerDispatchException
+ * after all listeners finished or timed out.
+ */
+public class IsolatedDispatcher<T> extends EventExtension<T> {
+
+  /** thread per task for virtual threads, cached daemon threads otherwise */
+  private static final Executor EXECUTOR;
+  private static final boolean VIRTUAL;
+
+  static {
+    ThreadFactory factory = virtualThreadFactory();
+    VIRTUAL = factory != null;
+
+    if(factory != null){
+      EXECUTOR = (Runnable r) -> factory.newThread(r).start();
+    } else {
+      EXECUTOR = Executors.newCachedThreadPool((Runnable r) -> {
+        Thread t = new Thread(r, "Event isolation");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  private long timeoutNanos;
+  private boolean unsubscribeOnTimeout = false;
+  /** timeouts for specific listeners */
+  private Map<Consumer<T>, Long> listenerTimeouts = new IdentityHashMap<>();
+  private Map<Consumer<T>, Long> timedOut = new IdentityHashMap<>();
+  private AtomicLong timeoutCount = new AtomicLong(0);
+  private int maxStragglers = 256;
+  private AtomicInteger stragglers = new AtomicInteger(0);
+  private AtomicLong skippedCount = new AtomicLong(0);
+
+  // states of a single listener invocation
+  private static final int PENDING = 0;
+  private static final int RUNNING = 1;
+  private static final int DONE = 2;
+  private static final int ABANDONED = 3;
+
+  public IsolatedDispatcher(Event<T> event, long timeout, TimeUnit unit){
+    super(event);
+    this.timeoutNanos = unit.toNanos(timeout);
+  }
+
+  /** @return boolean True if listeners run on virtual threads (Java 21+) */
+  public static boolean usesVirtualThreads(){
+    return VIRTUAL;
+  }
+
+  /**
+   * @param unsubscribe When true, listeners that time out are removed from the event
+   * @return IsolatedDispatcher This instance, for chaining
+   */
+  public IsolatedDispatcher<T> setUnsubscribeOnTimeout(boolean unsubscribe){
+    this.unsubscribeOnTimeout = unsubscribe;
+    return this;
+  }
+
+  /**
+   * Overrides the default timeout for a specific listener
+   * @param listener The listener
+   * @param timeout Maximum time to wait for the listener
+   * @param unit Unit of the timeout
+   * @return IsolatedDispatcher This instance, for chaining
+   */
+  public synchronized IsolatedDispatcher<T> setTimeout(Consumer<T> listener, long timeout, TimeUnit unit){
+    listenerTimeouts.put(listener, unit.toNanos(timeout));
+    return this;
+  }
+
+  /**
+   * @param max Maximum number of timed-out listener invocations that are still running, before invocations are skipped
+   * @return IsolatedDispatcher This instance, for chaining
+   */
+  public IsolatedDispatcher<T> setMaxStragglers(int max){
+    this.maxStragglers = max;
+    return this;
+  }
+
+  /** @return int Number of timed-out listener invocations that are still running */
+  public int getStragglerCount(){
+    return stragglers.get();
+  }
+
+  /** @return long Total number of listener invocations that were skipped because there were too many stragglers */
+  public long getSkippedCount(){
+    return skippedCount.get();
+  }
+
+  /** @return long Total number of listener invocations that timed out */
+  public long getTimeoutCount(){
+    return timeoutCount.get();
+  }
+
+  /** @return Map Number of timeouts per listener (snapshot) */
+  public synchronized Map<Consumer<T>, Long> getTimedOutListeners(){
+    return new IdentityHashMap<>(timedOut);
+  }
+
+  /**
+   * Invokes all given listeners, each on its own thread, and blocks until all
+   * of them finished or timed out
+   * @param listeners Snapshot of the listeners to invoke
+   * @param arg the payload to give to all listeners
+   */
+  public void dispatch(List<Consumer<T>> listeners, T arg){
+    dispatch(listeners, (Consumer<T> listener) -> listener.accept(arg));
+  }
+
+  /**
+   * Invokes all given listeners using the given invoker function (which can for example
+   * time the listener or catch its exceptions), each on its own thread, and blocks until
+   * all of them finished or timed out
+   * @param listeners Snapshot of the listeners to invoke
+   * @param invoker Invokes a single listener; called concurrently by multiple threads
+   */
+  public void dispatch(List<Consumer<T>> listeners, Consumer<Consumer<T>> invoker){
+    int count = listeners.size();
+    List<FutureTask<Void>> tasks = new ArrayList<>(count);
+    AtomicInteger[] states = new AtomicInteger[count];
+    long[] deadlines = new long[count];
+    long start = System.nanoTime();
+
+    synchronized(this){
+      for(int i=0; i<count; i++){
+        Long timeout = listenerTimeouts.get(listeners.get(i));
+        deadlines[i] = start + (timeout == null ? timeoutNanos : timeout);
+      }
+    }
+
+    for(int i=0; i<count; i++){
+      if(stragglers.get() >= maxStragglers){
+        skippedCount.incrementAndGet();
+        tasks.add(null);
+        continue;
+      }
+
+      Consumer<T> listener = listeners.get(i);
+      FutureTask<Void> task = new FutureTask<>(() -> invoker.accept(listener), null);
+      AtomicInteger state = new AtomicInteger(PENDING);
+      states[i] = state;
+      tasks.add(task);
+
+      EXECUTOR.execute(() -> {
+        if(!state.compareAndSet(PENDING, RUNNING)) return; // abandoned before it started
+
+        try {
+          task.run();
+        } finally {
+          // a straggler finished
+          if(!state.compareAndSet(RUNNING, DONE)) stragglers.decrementAndGet();
+        }
+      });
+    }
+
+    List<Throwable> errors = null;
+    boolean interrupted = false;
+
+    for(int i=0; i<count; i++){
+      FutureTask<Void> task = tasks.get(i);
+      if(task == null) continue; // skipped
+
+      try {
+        task.get(Math.max(0, deadlines[i] - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch(TimeoutException exc){
+        abandon(states[i]);
+        task.cancel(true); // interrupts the listener
+        onTimeout(listeners.get(i));
+      } catch(ExecutionException exc){
+        if(errors == null) errors = new ArrayList<>();
+        errors.add(exc.getCause());
+      } catch(InterruptedException exc){
+        // stop waiting; abandon this and all remaining invocations, but don't swallow the interrupt
+        interrupted = true;
+
+        for(int j=i; j<count; j++){
+          FutureTask<Void> rest = tasks.get(j);
+          if(rest == null || rest.isDone()) continue;
+          abandon(states[j]);
+          rest.cancel(true);
+        }
+
+        break;
+      }
+    }
+
+    if(interrupted)
+      Thread.currentThread().interrupt();
+
+    if(errors != null)
+      throw new ListenerDispatchException(errors);
+  }
+
+  /**
+   * Invokes all given listeners like dispatch(List, Consumer), without blocking
+   * @param listeners Snapshot of the listeners to invoke
+   * @param invoker Invokes a single listener; called concurrently by multiple threads
+   * @return CompletableFuture Completes when all listeners finished or timed out; exceptionally with a ListenerDispatchException if the invoker threw
+   */
+  public CompletableFuture<Void> dispatchAsync(List<Consumer<T>> listeners, Consumer<Consumer<T>> invoker){
+    // (waits on a thread of its own, like the listeners)
+    return CompletableFuture.runAsync(() -> dispatch(listeners, invoker), EXECUTOR);
+  }
+
+  /// Marks an invocation that is no longer waited for; counts it as a straggler if it's still running
+  private void abandon(AtomicInteger state){
+    if(state.compareAndSet(PENDING, ABANDONED)) return; // will never start
+
+    stragglers.incrementAndGet();
+    if(!state.compareAndSet(RUNNING, ABANDONED))
+      stragglers.decrementAndGet(); // finished in the meantime
+  }
+
+  private void onTimeout(Consumer<T> listener){
+    timeoutCount.incrementAndGet();
+
+    synchronized(this){
+      Long prev = timedOut.get(listener);
+      timedOut.put(listener, prev == null ? 1 : prev + 1);
+    }
+
+    // (queued by the event; it's frozen while dispatching)
+    if(unsubscribeOnTimeout)
+      event.removeListener(listener);
+  }
+
+  @Override
+  protected synchronized void destroy(){
+    listenerTimeouts.clear();
+    timedOut.clear();
+  }
+
+  /// Returns Thread.ofVirtual().factory() when running on a runtime with virtual threads
+  private static ThreadFactory virtualThreadFactory(){
+    try {
+      Method ofVirtual = Thread.class.getMethod("ofVirtual");
+      Object builder = ofVirtual.invoke(null);
+      Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+      return (ThreadFactory)factory.invoke(builder);
+    } catch(ReflectiveOperationException | RuntimeException exc){
+      return null;
+    }
+  }
+}
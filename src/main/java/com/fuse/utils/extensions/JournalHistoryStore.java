@@ -0,0 +1,377 @@
+package com.fuse.utils.extensions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fuse.utils.EventCodec;
+
+/**
+ * HistoryStore that appends values to memory-mapped segment files, so the
+ * history survives restarts and isn't bounded by the heap size.
+ *
+ * Segments are named [name]-[first sequence].seg and consist of a 16 byte header
+ * (magic, format version, creation time) followed by records of a 4 byte
+ * header (payload length + 1; zero marks the end of the data) and the payload
+ * as written by the codec.
+ *
+ * A new segment is started when the current one is full or older than the
+ * roll interval. Whenever a segment is started the oldest segments are deleted
+ * until the retained segments fit the configured retention size and age.
+ */
+public class JournalHistoryStore<T> implements HistoryStore<T> {
+  private static final int MAGIC = 0x4A455631; // "JEV1"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final String EXTENSION = ".seg";
+
+  private static class Segment {
+    Path path;
+    long firstSequence;
+    long count = 0;
+    long created;
+    MappedByteBuffer buffer;
+    /** offset after the last record */
+    int end = HEADER_SIZE;
+  }
+
+  private Path directory;
+  private String name;
+  private EventCodec<T> codec;
+  private int segmentSize = 64 * 1024 * 1024;
+  private long rollIntervalMillis = Long.MAX_VALUE;
+  private long maxRetainedBytes = Long.MAX_VALUE;
+  private long maxRetainedMillis = Long.MAX_VALUE;
+
+  /** null while closed */
+  private List<Segment> segments = null;
+  private Segment active = null;
+
+  /** position after the last read, so sequential reads don't have to scan their segment from the start */
+  private Segment hintSegment = null;
+  private long hintSequence = -1;
+  private int hintOffset = 0;
+
+  public JournalHistoryStore(Path directory, String name, EventCodec<T> codec){
+    this.directory = directory;
+    this.name = name;
+    this.codec = codec;
+  }
+
+  /**
+   * @param bytes Size of newly created segment files
+   * @return JournalHistoryStore This store, for chaining
+   */
+  public JournalHistoryStore<T> setSegmentSize(int bytes){ this.segmentSize = bytes; return this; }
+
+  /**
+   * @param millis Maximum age of the segment that is being written to, before a new segment is started
+   * @return JournalHistoryStore This store, for chaining
+   */
+  public JournalHistoryStore<T> setRollInterval(long millis){ this.rollIntervalMillis = millis; return this; }
+
+  /**
+   * Configures which segments are kept. The segment that is being written to is never deleted.
+   * @param maxBytes Maximum total size of all segment files
+   * @param maxMillis Maximum time since the last write to a segment
+   * @return JournalHistoryStore This store, for chaining
+   */
+  public JournalHistoryStore<T> setRetention(long maxBytes, long maxMillis){
+    this.maxRetainedBytes = maxBytes;
+    this.maxRetainedMillis = maxMillis;
+    return this;
+  }
+
+  public Path getDirectory(){ return directory; }
+
+  @Override
+  public synchronized void append(T value){
+    open();
+
+    if(active.count > 0 && System.currentTimeMillis() - active.created >= rollIntervalMillis)
+      roll();
+
+    if(write(value)) return;
+
+    if(active.count == 0)
+      throw new IllegalArgumentException("Encoded value doesn't fit in a journal segment of "+Integer.toString(segmentSize)+" bytes");
+
+    roll();
+
+    if(!write(value))
+      throw new IllegalArgumentException("Encoded value doesn't fit in a journal segment of "+Integer.toString(segmentSize)+" bytes");
+  }
+
+  @Override
+  public synchronized long firstSequence(){
+    open();
+    return segments.get(0).firstSequence;
+  }
+
+  @Override
+  public synchronized long nextSequence(){
+    open();
+    return active.firstSequence + active.count;
+  }
+
+  @Override
+  public long read(long fromSequence, int max, Consumer<T> consumer){
+    List<T> chunk = new ArrayList<>(Math.min(max, 1024));
+    long next = readChunk(fromSequence, max, chunk);
+
+    // deliver outside the lock; consumers might append new values
+    for(int i=0; i<chunk.size(); i++)
+      consumer.accept(chunk.get(i));
+
+    return next;
+  }
+
+  private synchronized long readChunk(long fromSequence, int max, List<T> chunk){
+    open();
+
+    long seq = Math.max(fromSequence, segments.get(0).firstSequence);
+    int segIdx;
+    int offset;
+
+    if(hintSegment != null && hintSequence == seq && segments.contains(hintSegment)){
+      segIdx = segments.indexOf(hintSegment);
+      offset = hintOffset;
+    } else {
+      // find the last segment that starts at or before seq
+      segIdx = segments.size()-1;
+      while(segIdx > 0 && segments.get(segIdx).firstSequence > seq)
+        segIdx--;
+
+      Segment seg = segments.get(segIdx);
+      offset = HEADER_SIZE;
+      for(long s = seg.firstSequence; s < seq && s < seg.firstSequence + seg.count; s++)
+        offset += 4 + seg.buffer.getInt(offset) - 1;
+    }
+
+    while(chunk.size() < max && segIdx < segments.size()){
+      Segment seg = segments.get(segIdx);
+
+      if(seq >= seg.firstSequence + seg.count){
+        // continue with the next segment
+        if(segIdx == segments.size()-1) break;
+        segIdx++;
+        offset = HEADER_SIZE;
+        continue;
+      }
+
+      int len = seg.buffer.getInt(offset) - 1;
+      ByteBuffer src = seg.buffer.duplicate();
+      src.limit(offset + 4 + len);
+      src.position(offset + 4);
+      chunk.add(codec.decode(src.slice()));
+
+      offset += 4 + len;
+      seq++;
+    }
+
+    if(segIdx < segments.size()){
+      hintSegment = segments.get(segIdx);
+      hintSequence = seq;
+      hintOffset = offset;
+    }
+
+    return seq;
+  }
+
+  /** Loads ALL retained values into memory; use read() to stream large histories */
+  @Override
+  public List<T> getValues(){
+    List<T> values = new ArrayList<>();
+    long seq = firstSequence();
+    long end = nextSequence();
+
+    while(seq < end)
+      seq = read(seq, 1024, (T value) -> values.add(value));
+
+    return values;
+  }
+
+  /** Deletes all segment files; sequence numbers continue where they were */
+  @Override
+  public synchronized void clear(){
+    open();
+    long next = nextSequence();
+
+    for(Segment seg : segments)
+      delete(seg);
+
+    segments.clear();
+    startSegment(next);
+  }
+
+  @Override
+  public synchronized void close(){
+    if(segments == null) return;
+
+    if(active != null)
+      active.buffer.force();
+
+    segments = null;
+    active = null;
+    hintSegment = null;
+  }
+
+  //
+  // internals
+  //
+
+  /// Maps all existing segments and prepares the last one for writing
+  private void open(){
+    if(segments != null) return;
+
+    try {
+      Files.createDirectories(directory);
+      segments = new ArrayList<>();
+
+      try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name+"-*"+EXTENSION)){
+        for(Path path : stream){
+          String fileName = path.getFileName().toString();
+          String seqPart = fileName.substring(name.length()+1, fileName.length()-EXTENSION.length());
+
+          try {
+            Segment seg = new Segment();
+            seg.path = path;
+            seg.firstSequence = Long.parseLong(seqPart);
+            segments.add(seg);
+          } catch(NumberFormatException exc){
+            // not one of our segments
+          }
+        }
+      }
+
+      segments.sort((a, b) -> Long.compare(a.firstSequence, b.firstSequence));
+
+      for(Segment seg : segments)
+        load(seg);
+
+      if(segments.isEmpty())
+        startSegment(0);
+      else
+        active = segments.get(segments.size()-1);
+
+      applyRetention();
+    } catch(IOException exc){
+      segments = null;
+      throw new UncheckedIOException(exc);
+    }
+  }
+
+  /// Maps an existing segment and scans its records
+  private void load(Segment seg) throws IOException {
+    try(FileChannel channel = FileChannel.open(seg.path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+      seg.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+    }
+
+    if(seg.buffer.capacity() < HEADER_SIZE || seg.buffer.getInt(0) != MAGIC || seg.buffer.getInt(4) != VERSION)
+      throw new IOException("Not a valid journal segment: "+seg.path.toString());
+
+    seg.created = seg.buffer.getLong(8);
+
+    int offset = HEADER_SIZE;
+    int capacity = seg.buffer.capacity();
+    while(offset + 4 <= capacity){
+      int len = seg.buffer.getInt(offset) - 1;
+      if(len < 0 || offset + 4 + len > capacity) break; // end of data (or a torn write)
+      offset += 4 + len;
+      seg.count++;
+    }
+
+    seg.end = offset;
+  }
+
+  private void startSegment(long firstSequence){
+    Segment seg = new Segment();
+    seg.firstSequence = firstSequence;
+    seg.created = System.currentTimeMillis();
+    seg.path = directory.resolve(String.format("%s-%020d%s", name, firstSequence, EXTENSION));
+
+    try(FileChannel channel = FileChannel.open(seg.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+      seg.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    } catch(IOException exc){
+      throw new UncheckedIOException(exc);
+    }
+
+    seg.buffer.putInt(0, MAGIC);
+    seg.buffer.putInt(4, VERSION);
+    seg.buffer.putLong(8, seg.created);
+
+    segments.add(seg);
+    active = seg;
+  }
+
+  private void roll(){
+    active.buffer.force();
+    startSegment(active.firstSequence + active.count);
+    applyRetention();
+  }
+
+  /// Deletes the oldest segments until the retained segments fit the retention limits
+  private void applyRetention(){
+    long total = 0;
+    for(Segment seg : segments)
+      total += seg.buffer.capacity();
+
+    long now = System.currentTimeMillis();
+
+    while(segments.size() > 1){
+      Segment oldest = segments.get(0);
+      // a segment was last written to when its successor was started
+      long lastWrite = segments.get(1).created;
+
+      if(total <= maxRetainedBytes && now - lastWrite <= maxRetainedMillis)
+        return;
+
+      total -= oldest.buffer.capacity();
+      segments.remove(0);
+      delete(oldest);
+    }
+  }
+
+  private void delete(Segment seg){
+    if(hintSegment == seg) hintSegment = null;
+
+    try {
+      Files.deleteIfExists(seg.path);
+    } catch(IOException exc){
+      throw new UncheckedIOException(exc);
+    }
+  }
+
+  /// Tries to write a record to the active segment, returns false if it doesn't fit
+  private boolean write(T value){
+    int start = active.end;
+    MappedByteBuffer buffer = active.buffer;
+    if(start + 4 > buffer.capacity()) return false;
+
+    ByteBuffer dst = buffer.duplicate();
+    dst.position(start + 4);
+
+    try {
+      codec.encode(value, dst);
+    } catch(BufferOverflowException exc){
+      return false;
+    }
+
+    int len = dst.position() - start - 4;
+    // the length is written last; readers stop at a zero length
+    buffer.putInt(start, len + 1);
+    active.end = dst.position();
+    active.count++;
+    return true;
+  }
+}
@@ -1,6 +1,6 @@
 package com.fuse.utils.extensions;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Consumer;
 
@@ -25,16 +25,34 @@ public class ListenerGroupExt<T> extends EventExtension<T> {
     this.event.addListener(newListener, owner);
   }
 
+  /**
+   * Adds many listeners to the group, with a single listener rebuild per event
+   * @param newListeners The listeners to add
+   * @param owner Owner of the new listeners
+   */
+  public void addListeners(Collection<? extends Consumer<T>> newListeners, Object owner){
+    this.groupEvent.addListeners(newListeners, owner);
+    this.event.addListeners(newListeners, owner);
+  }
+
   public void stopListeners(Object owner) {
     List<Consumer<T>> ls = this.groupEvent.getOwnerListeners(owner);
-    for(Consumer<T> l : ls) {
-      this.event.removeListener(l);
-      this.groupEvent.removeListeners(l);
-    }
+    if(ls.isEmpty()) return;
+
+    Event.Batch<T> batch = this.event.batch();
+    for(Consumer<T> l : ls)
+      batch.remove(l);
+    batch.publish();
+
+    this.groupEvent.removeListeners(owner);
   }
 
   public void stopListeners() {
-    this.event.removeListeners(this.groupEvent.getAllListeners());
+    Event.Batch<T> batch = this.event.batch();
+    for(Consumer<T> l : this.groupEvent.getAllListeners())
+      batch.remove(l);
+    batch.publish();
+
     this.groupEvent.destroy();
   }
 }
@@ -0,0 +1,179 @@
+package com.fuse.utils.extensions;
+
+import java.lang.invoke.SerializedLambda;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import com.fuse.utils.Event;
+
+/**
+ * Samples a fraction of an event's triggers and times every listener invocation
+ * of the sampled triggers. Keeps a bounded table of the K slowest listeners
+ * (ranked by their slowest sampled invocation), which can be read using snapshot().
+ */
+public class ListenerProfiler<T> extends EventExtension<T> {
+
+  /** Snapshot of the profiling data of a single listener */
+  public static class Entry {
+    /** weak; the profiler shouldn't keep removed listeners (and what they capture) alive */
+    WeakReference<Consumer<?>> listener;
+    Class<?> listenerClass;
+    String ownerName;
+    String implClass = null;
+    String implMethod = null;
+    long invocations = 0;
+    long totalNanos = 0;
+    long maxNanos = 0;
+
+    Entry(Consumer<?> listener, Object owner){
+      this.listener = new WeakReference<Consumer<?>>(listener);
+      this.listenerClass = listener.getClass();
+      this.ownerName = owner == null ? null : owner.getClass().getName()+"@"+Integer.toHexString(System.identityHashCode(owner));
+    }
+
+    Entry(Entry other){
+      // snapshots don't hold on to the listener
+      other.resolve();
+      this.ownerName = other.ownerName;
+      this.implClass = other.implClass;
+      this.implMethod = other.implMethod;
+      this.invocations = other.invocations;
+      this.totalNanos = other.totalNanos;
+      this.maxNanos = other.maxNanos;
+    }
+
+    /** @return String Class name and identity hash of the listener's owner, null for ownerless listeners */
+    public String getOwnerName(){ return ownerName; }
+    /** @return String Name of the class that implements the listener (for lambdas; the class in which the lambda was written) */
+    public String getImplClass(){ return implClass; }
+    /** @return String Name of the implementing method (only resolvable for serializable lambdas, "lambda" otherwise) */
+    public String getImplMethod(){ return implMethod; }
+    public long getInvocations(){ return invocations; }
+    public long getTotalNanos(){ return totalNanos; }
+    public long getMaxNanos(){ return maxNanos; }
+    public long getAverageNanos(){ return invocations == 0 ? 0 : totalNanos / invocations; }
+
+    /// Describes the listener (if it wasn't collected yet); done on report instead of on the trigger path
+    private void resolve(){
+      if(implClass != null) return;
+      String[] impl = describe(listenerClass, listener.get());
+      this.implClass = impl[0];
+      this.implMethod = impl[1];
+    }
+
+    @Override public String toString(){
+      return implClass+"::"+implMethod+" (owner: "+ownerName+") max: "+Long.toString(maxNanos)+"ns, avg: "+Long.toString(getAverageNanos())+"ns, samples: "+Long.toString(invocations);
+    }
+  }
+
+  private double sampleRate;
+  private Entry[] table;
+  private int tableSize = 0;
+
+  public ListenerProfiler(Event<T> event, double sampleRate, int topK){
+    super(event);
+    this.sampleRate = sampleRate;
+    this.table = new Entry[Math.max(1, topK)];
+  }
+
+  public double getSampleRate(){ return sampleRate; }
+
+  public void setSampleRate(double rate){ this.sampleRate = rate; }
+
+  /** @return boolean True if the upcoming trigger should be profiled */
+  public boolean sample(){
+    double rate = this.sampleRate;
+    return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+  }
+
+  /**
+   * Records a single timed listener invocation
+   * @param listener The listener that was invoked
+   * @param nanos The duration of the invocation
+   */
+  public synchronized void record(Consumer<T> listener, long nanos){
+    int minIdx = -1;
+
+    for(int i=0; i<tableSize; i++){
+      Entry entry = table[i];
+      if(entry.listener.get() == listener){
+        entry.invocations++;
+        entry.totalNanos += nanos;
+        if(nanos > entry.maxNanos) entry.maxNanos = nanos;
+        return;
+      }
+
+      if(minIdx == -1 || entry.maxNanos < table[minIdx].maxNanos)
+        minIdx = i;
+    }
+
+    // table full and not slower than the fastest entry in the table
+    if(tableSize == table.length && nanos <= table[minIdx].maxNanos)
+      return;
+
+    Entry entry = new Entry(listener, event.getOwner(listener));
+    entry.invocations = 1;
+    entry.totalNanos = nanos;
+    entry.maxNanos = nanos;
+
+    if(tableSize < table.length)
+      table[tableSize++] = entry;
+    else
+      table[minIdx] = entry;
+  }
+
+  /**
+   * Returns a copy of the current top-K table, slowest listener first
+   * @return List Profiling data of the slowest sampled listeners
+   */
+  public synchronized List<Entry> snapshot(){
+    List<Entry> result = new ArrayList<>(tableSize);
+    for(int i=0; i<tableSize; i++)
+      result.add(new Entry(table[i]));
+    result.sort((a, b) -> Long.compare(b.maxNanos, a.maxNanos));
+    return result;
+  }
+
+  /** Clears all recorded profiling data */
+  public synchronized void reset(){
+    for(int i=0; i<tableSize; i++)
+      table[i] = null;
+    tableSize = 0;
+  }
+
+  @Override
+  protected void destroy(){
+    reset();
+  }
+
+  /**
+   * Resolves the implementing class and method of a listener. The implementation
+   * method of a lambda can only be resolved when the lambda is serializable (and
+   * the listener wasn't garbage collected yet), for other lambdas only the class
+   * in which the lambda was written is known.
+   */
+  private static String[] describe(Class<?> cls, Object listener){
+    if(listener != null) try {
+      Method m = cls.getDeclaredMethod("writeReplace");
+      m.setAccessible(true);
+      Object replacement = m.invoke(listener);
+      if(replacement instanceof SerializedLambda){
+        SerializedLambda l = (SerializedLambda)replacement;
+        return new String[]{ l.getImplClass().replace('/', '.'), l.getImplMethodName() };
+      }
+    } catch(Exception exc){
+      // not a serializable lambda
+    }
+
+    String name = cls.getName();
+    int idx = name.indexOf("$$Lambda");
+    if(idx != -1)
+      return new String[]{ name.substring(0, idx), "lambda" };
+
+    return new String[]{ name, "accept" };
+  }
+}
@@ -0,0 +1,113 @@
+package com.fuse.utils.extensions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** Default HistoryStore which keeps all values in an ArrayList */
+public class MemoryHistoryStore<T> implements HistoryStore<T> {
+  private List<T> values = null;
+  private long firstSequence = 0;
+  /** trigger stamps of the values (by index), only allocated once stamped values are appended */
+  private long[] stampSequences = null;
+  private long[] stampNanos = null;
+
+  @Override
+  public void append(T value){
+    if(values == null)
+      values = new ArrayList<>();
+    values.add(value);
+  }
+
+  @Override
+  public void append(T value, long triggerSequence, long triggerNanos){
+    append(value);
+    int idx = values.size()-1;
+
+    if(stampSequences == null || idx >= stampSequences.length){
+      int size = Math.max(16, Math.max(idx+1, stampSequences == null ? 0 : stampSequences.length * 2));
+      int from = stampSequences == null ? 0 : stampSequences.length;
+      stampSequences = stampSequences == null ? new long[size] : Arrays.copyOf(stampSequences, size);
+      stampNanos = stampNanos == null ? new long[size] : Arrays.copyOf(stampNanos, size);
+      // values appended without stamps
+      Arrays.fill(stampSequences, from, size, -1);
+    }
+
+    stampSequences[idx] = triggerSequence;
+    stampNanos[idx] = triggerNanos;
+  }
+
+  @Override
+  public long firstSequence(){
+    return firstSequence;
+  }
+
+  @Override
+  public long nextSequence(){
+    return firstSequence + (values == null ? 0 : values.size());
+  }
+
+  @Override
+  public long read(long fromSequence, int max, Consumer<T> consumer){
+    long from = Math.max(fromSequence, firstSequence);
+    long end = Math.min(nextSequence(), from + max);
+    if(from >= end) return from;
+
+    // copy before delivering; consumers might append new values
+    List<T> chunk = new ArrayList<>(values.subList((int)(from - firstSequence), (int)(end - firstSequence)));
+    for(int i=0; i<chunk.size(); i++)
+      consumer.accept(chunk.get(i));
+
+    return end;
+  }
+
+  @Override
+  public long readStamped(long fromSequence, int max, StampedConsumer<T> consumer){
+    long from = Math.max(fromSequence, firstSequence);
+    long end = Math.min(nextSequence(), from + max);
+    if(from >= end) return from;
+
+    int start = (int)(from - firstSequence);
+    int count = (int)(end - from);
+
+    // copy before delivering; consumers might append new values
+    List<T> chunk = new ArrayList<>(values.subList(start, start + count));
+    long[] sequences = new long[count];
+    long[] nanos = new long[count];
+    Arrays.fill(sequences, -1);
+
+    if(stampSequences != null){
+      int stamped = Math.max(0, Math.min(count, stampSequences.length - start));
+      System.arraycopy(stampSequences, start, sequences, 0, stamped);
+      System.arraycopy(stampNanos, start, nanos, 0, stamped);
+    }
+
+    for(int i=0; i<count; i++)
+      consumer.accept(chunk.get(i), sequences[i], nanos[i]);
+
+    return end;
+  }
+
+  @Override
+  public List<T> getValues(){
+    if(values == null)
+      values = new ArrayList<>();
+    return values;
+  }
+
+  @Override
+  public void clear(){
+    firstSequence = nextSequence();
+    if(values != null)
+      values.clear();
+    stampSequences = null;
+    stampNanos = null;
+  }
+
+  @Override
+  public void close(){
+    clear();
+    values = null;
+  }
+}
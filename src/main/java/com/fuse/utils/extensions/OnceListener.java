@@ -1,5 +1,6 @@
 package com.fuse.utils.extensions;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import com.fuse.utils.Event;
@@ -8,6 +9,8 @@ public class OnceListener<T> extends EventExtension<T> {
   private Consumer<T> listener;
   private Object owner;
   private Consumer<T> wrappedListener;
+  /** a concurrently dispatched listener can be invoked again before its removal is applied */
+  private AtomicBoolean fired = new AtomicBoolean(false);
 
   public OnceListener(Event<T> event, Consumer<T> listener, Object owner){
     super(event);
@@ -17,14 +20,19 @@ public class OnceListener<T> extends EventExtension<T> {
 
   @Override
   protected void setup(){
-    // wrap original listener in a self-removing wrapper
+    // wrap original listener in a self-removing wrapper; it's user code, so
+    // parallel dispatch and isolation mode invoke it like any other listener
     wrappedListener = (T payload) -> {
-      // call original listener
-      this.listener.accept(payload);
-      // remove registered (wrapped) listener
-      this.event.removeListener(this.wrappedListener);
-      // flag for cleanup
-      this.bDone = true;
+      if(!fired.compareAndSet(false, true)) return;
+
+      try {
+        // call original listener
+        this.listener.accept(payload);
+      } finally {
+        // remove registered (wrapped) listener, even if the listener threw; when invoked
+        // on another thread the event applies the removal on the triggering thread
+        this.event.removeListener(this.wrappedListener);
+      }
     };
 
     event.addListener(wrappedListener, owner); // register wrapped listener
@@ -37,4 +45,10 @@ public class OnceListener<T> extends EventExtension<T> {
       wrappedListener = null;
     }
   }
+
+  /** @return boolean True once the listener was invoked (flags it for cleanup) */
+  @Override
+  public boolean isDone(){
+    return fired.get();
+  }
 }
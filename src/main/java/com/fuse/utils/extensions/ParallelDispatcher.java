@@ -0,0 +1,146 @@
+package com.fuse.utils.extensions;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import com.fuse.utils.Event;
+import com.fuse.utils.ListenerDispatchException;
+
+/**
+ * Invokes the listeners of an event in parallel, by recursively splitting the
+ * (frozen) listener list into chunks which are processed by a ForkJoinPool
+ * (work stealing). Exceptions thrown by listeners don't stop the dispatch;
+ * they're collected and thrown as one ListenerDispatchException afterwards.
+ *
+ * (Un)registrations made by listeners that run in parallel are handed to the
+ * triggering thread by the event, which applies them once the dispatch is done.
+ * The event's own listeners (see Event.InlineListener) are not given to this
+ * dispatcher; the event invokes those on the triggering thread.
+ */
+public class ParallelDispatcher<T> extends EventExtension<T> {
+
+  private class Chunk extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private List<Consumer<T>> listeners;
+    private int from, to;
+    private Consumer<Consumer<T>> invoker;
+    private Queue<Throwable> errors;
+
+    Chunk(List<Consumer<T>> listeners, int from, int to, Consumer<Consumer<T>> invoker, Queue<Throwable> errors){
+      this.listeners = listeners;
+      this.from = from;
+      this.to = to;
+      this.invoker = invoker;
+      this.errors = errors;
+    }
+
+    @Override
+    protected void compute(){
+      if(to - from <= chunkSize){
+        for(int i=from; i<to; i++){
+          try {
+            invoker.accept(listeners.get(i));
+          } catch(RuntimeException exc){
+            errors.add(exc);
+          }
+        }
+        return;
+      }
+
+      int mid = (from + to) >>> 1;
+      invokeAll(new Chunk(listeners, from, mid, invoker, errors), new Chunk(listeners, mid, to, invoker, errors));
+    }
+  }
+
+  private int threshold;
+  private int chunkSize;
+  private ForkJoinPool pool;
+
+  /**
+   * @param event The event to dispatch for
+   * @param threshold Minimum number of listeners for dispatching in parallel; below it listeners are invoked sequentially
+   * @param chunkSize Number of listeners invoked sequentially by a single task
+   * @param pool The pool to run the chunks on
+   */
+  public ParallelDispatcher(Event<T> event, int threshold, int chunkSize, ForkJoinPool pool){
+    super(event);
+    this.threshold = threshold;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.pool = pool;
+  }
+
+  public int getThreshold(){ return threshold; }
+
+  /**
+   * @param listenerCount Number of listeners to invoke
+   * @return boolean True if that many listeners should be invoked in parallel
+   */
+  public boolean isParallel(int listenerCount){
+    return listenerCount >= threshold;
+  }
+
+  /**
+   * Invokes all given listeners and blocks until they're done
+   * @param listeners Snapshot of the listeners to invoke
+   * @param arg the payload to give to all listeners
+   */
+  public void dispatch(List<Consumer<T>> listeners, T arg){
+    dispatch(listeners, (Consumer<T> listener) -> listener.accept(arg));
+  }
+
+  /**
+   * Invokes all given listeners using the given invoker function (which can for example
+   * time the listener or catch its exceptions) and blocks until they're done
+   * @param listeners Snapshot of the listeners to invoke
+   * @param invoker Invokes a single listener; called concurrently by multiple pool threads
+   */
+  public void dispatch(List<Consumer<T>> listeners, Consumer<Consumer<T>> invoker){
+    Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+    pool.invoke(new Chunk(listeners, 0, listeners.size(), invoker, errors));
+
+    if(!errors.isEmpty())
+      throw new ListenerDispatchException(errors);
+  }
+
+  /**
+   * Invokes all given listeners without blocking
+   * @param listeners Snapshot of the listeners to invoke
+   * @param arg the payload to give to all listeners
+   * @return CompletableFuture Completes when all listeners are done; exceptionally with a ListenerDispatchException if any of them threw
+   */
+  public CompletableFuture<Void> dispatchAsync(List<Consumer<T>> listeners, T arg){
+    return dispatchAsync(listeners, (Consumer<T> listener) -> listener.accept(arg));
+  }
+
+  /**
+   * Invokes all given listeners using the given invoker function without blocking
+   * @param listeners Snapshot of the listeners to invoke
+   * @param invoker Invokes a single listener; called concurrently by multiple pool threads
+   * @return CompletableFuture Completes when all listeners are done; exceptionally with a ListenerDispatchException if the invoker threw
+   */
+  public CompletableFuture<Void> dispatchAsync(List<Consumer<T>> listeners, Consumer<Consumer<T>> invoker){
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+    Chunk root = new Chunk(listeners, 0, listeners.size(), invoker, errors);
+
+    pool.execute(() -> {
+      try {
+        root.invoke();
+      } catch(Throwable t){
+        errors.add(t);
+      }
+
+      if(errors.isEmpty())
+        future.complete(null);
+      else
+        future.completeExceptionally(new ListenerDispatchException(errors));
+    });
+
+    return future;
+  }
+}
@@ -0,0 +1,170 @@
+package com.fuse.utils.extensions;
+
+import com.fuse.utils.State;
+
+/**
+ * Keeps a bounded history of a state's values in a ring buffer (parallel
+ * arrays of values, sequence numbers and timestamps), so earlier values can
+ * be looked up by sequence or time and changes can be undone and redone.
+ * Every change of the state gets the next sequence number.
+ *
+ * Values are recorded by the state itself, without event listeners, so
+ * recording doesn't allocate.
+ */
+public class StateHistory<T> extends StateExt<T> {
+  private Object[] values;
+  private long[] nanos;
+  /** sequence the next recorded value gets */
+  private long nextSequence = 0;
+  private int count = 0;
+  /** sequence of the value the state currently has (differs from the last recorded sequence after undo) */
+  private long cursor = -1;
+  /** true while undo/redo sets the state's value */
+  private boolean restoring = false;
+
+  public StateHistory(State<T> state, int capacity){
+    super(state);
+    this.values = new Object[Math.max(1, capacity)];
+    this.nanos = new long[values.length];
+  }
+
+  @Override protected void setup(){
+    // the current value is the first value of the history
+    if(this.state.isInitialized() && count == 0)
+      record(this.state.val());
+  }
+
+  @Override protected void destroy(){
+    clear();
+  }
+
+  /**
+   * Records a new value; invoked by the state for every change.
+   * Changes after undo discard the values that could have been redone.
+   * @param value The new value of the state
+   */
+  public void record(T value){
+    if(restoring) return;
+
+    if(cursor != nextSequence-1){
+      // drop the redo branch
+      count -= (int)(nextSequence - 1 - cursor);
+      nextSequence = cursor+1;
+    }
+
+    int idx = (int)(nextSequence % values.length);
+    values[idx] = value;
+    nanos[idx] = System.nanoTime();
+    cursor = nextSequence;
+    nextSequence++;
+    if(count < values.length) count++;
+  }
+
+  /** @return long Sequence number of the oldest retained value */
+  public long firstSequence(){
+    return nextSequence - count;
+  }
+
+  /** @return long Sequence number of the state's current value, -1 if nothing was recorded */
+  public long getSequence(){
+    return cursor;
+  }
+
+  public int size(){
+    return count;
+  }
+
+  public int getCapacity(){
+    return values.length;
+  }
+
+  /**
+   * @param sequence Sequence number of the value
+   * @return T The value the state had at the given sequence, null if not retained
+   */
+  @SuppressWarnings("unchecked")
+  public T valueAt(long sequence){
+    if(sequence < firstSequence() || sequence >= nextSequence) return null;
+    return (T)values[(int)(sequence % values.length)];
+  }
+
+  /**
+   * @param sequence Sequence number of the value
+   * @return long System.nanoTime() of the change at the given sequence, 0 if not retained
+   */
+  public long timeAt(long sequence){
+    if(sequence < firstSequence() || sequence >= nextSequence) return 0;
+    return nanos[(int)(sequence % values.length)];
+  }
+
+  /**
+   * @param time A System.nanoTime() timestamp
+   * @return long Sequence of the value the state had at the given time, -1 if that is before the retained history
+   */
+  public long sequenceAt(long time){
+    long lo = firstSequence();
+    long hi = nextSequence-1;
+    long found = -1;
+
+    // (timestamps increase with the sequence)
+    while(lo <= hi){
+      long mid = (lo + hi) >>> 1;
+      if(nanos[(int)(mid % values.length)] - time <= 0){
+        found = mid;
+        lo = mid+1;
+      } else {
+        hi = mid-1;
+      }
+    }
+
+    return found;
+  }
+
+  /**
+   * @param time A System.nanoTime() timestamp
+   * @return T The value the state had at the given time, null if that is before the retained history
+   */
+  public T valueAtTime(long time){
+    long seq = sequenceAt(time);
+    return seq == -1 ? null : valueAt(seq);
+  }
+
+  /**
+   * Restores the state's previous value
+   * @return boolean False if there is no (retained) previous value
+   */
+  public boolean undo(){
+    if(cursor <= firstSequence()) return false;
+    restore(cursor-1);
+    return true;
+  }
+
+  /**
+   * Restores the value that was undone last
+   * @return boolean False if there is nothing to redo
+   */
+  public boolean redo(){
+    if(cursor+1 >= nextSequence) return false;
+    restore(cursor+1);
+    return true;
+  }
+
+  /** Drops all recorded values; sequence numbers continue where they were */
+  public void clear(){
+    for(int i=0; i<values.length; i++)
+      values[i] = null;
+    count = 0;
+    cursor = nextSequence-1;
+  }
+
+  private void restore(long sequence){
+    cursor = sequence;
+    restoring = true;
+
+    try {
+      this.state.set(valueAt(sequence));
+    } finally {
+      restoring = false;
+    }
+  }
+}
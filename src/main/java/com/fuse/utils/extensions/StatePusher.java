@@ -14,12 +14,12 @@ public class StatePusher<T> extends StateExt<T> {
   }
 
   @Override protected void setup(){
-    this.state.newValueEvent.addListener(func, this);
+    this.state.getNewValueEvent().addListener(func, this);
     if(this.state.isInitialized())
       this.func.accept(this.state.val());
   }
 
   @Override protected void destroy(){
-    this.state.newValueEvent.removeListeners(this);
+    this.state.getNewValueEvent().removeListeners(this);
   }
 }
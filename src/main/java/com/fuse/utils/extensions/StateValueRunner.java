@@ -26,12 +26,12 @@ public class StateValueRunner<T> extends StateExt<T> {
   public StateValueRunner<T> setOnce(){ return this.setMaxTimes(1); }
 
   @Override protected void setup(){
-    this.state.newValueEvent.addListener((T val) -> { this.check(val); }, this);
+    this.state.getNewValueEvent().addListener((T val) -> { this.check(val); }, this);
     this.check(this.state.get());
   }
 
   @Override protected void destroy(){
-    this.state.newValueEvent.removeListeners(this);
+    this.state.getNewValueEvent().removeListeners(this);
   }
 
   public StateValueRunner<T> setIsNegative(boolean negative){ this.bNegative = negative; return this; }
@@ -0,0 +1,83 @@
+package com.fuse.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class AsyncTestTest {
+
+  @Test public void all() throws Exception {
+    AsyncTest<Integer> test = new AsyncTest<>();
+    CompletableFuture<Boolean> pending = new CompletableFuture<>();
+
+    assertEquals(test.test(1).get(), true);
+
+    test.addListener((Integer val) -> CompletableFuture.completedFuture(val > 0), this);
+    test.addListener((Integer val) -> CompletableFuture.supplyAsync(() -> val < 10));
+    assertEquals(test.test(5).get(), true);
+    assertEquals(test.test(50).get(), false);
+
+    // a failing listener short-circuits; the listeners that are still busy aren't waited for
+    test.addListener((Integer val) -> pending);
+    CompletableFuture<Boolean> result = test.test(-1);
+    assertEquals(result.get(), false);
+    assertFalse(pending.isDone());
+
+    // (their stages can be shared, they're only cancelled when enabled)
+    test.setCancelRemaining(true);
+    assertEquals(test.test(-1).get(), false);
+    assertTrue(pending.isCancelled());
+
+    test.removeListeners(this);
+    assertEquals(test.size(), 2);
+  }
+
+  @Test public void any() throws Exception {
+    AsyncTest<Integer> test = new AsyncTest<>(AsyncTest.Mode.ANY);
+    CompletableFuture<Boolean> pending = new CompletableFuture<>();
+
+    test.addListener((Integer val) -> CompletableFuture.completedFuture(val == 1));
+    test.addListener((Integer val) -> CompletableFuture.completedFuture(val == 2));
+    assertEquals(test.test(2).get(), true);
+    assertEquals(test.test(3).get(), false);
+
+    test.addListener((Integer val) -> pending);
+    assertEquals(test.test(1).get(), true);
+    assertFalse(pending.isDone());
+
+    // cancelling the result stops waiting, without cancelling the listener stages
+    CompletableFuture<Boolean> result = test.test(3);
+    result.cancel(true);
+    assertFalse(pending.isDone());
+    pending.complete(true);
+    assertTrue(result.isCancelled());
+  }
+
+  @Test public void once_and_exceptions() throws Exception {
+    AsyncTest<String> test = new AsyncTest<>();
+    test.addOnceListener((String val) -> CompletableFuture.completedFuture(false));
+    assertEquals(test.test("a").get(), false);
+    assertEquals(test.size(), 0);
+    assertEquals(test.test("b").get(), true);
+
+    test.addListener((String val) -> {
+      CompletableFuture<Boolean> f = new CompletableFuture<>();
+      f.completeExceptionally(new IllegalStateException("lookup failed"));
+      return (CompletionStage<Boolean>)f;
+    });
+
+    try {
+      test.test("c").get();
+      fail("expected an exception");
+    } catch(ExecutionException exc){
+      assertTrue(exc.getCause() instanceof IllegalStateException);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.fuse.utils;
+
+import java.nio.file.Paths;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.fuse.utils.bridge.EventBridge;
+import com.fuse.utils.bridge.MappedRingTransport;
+
+/**
+ * Other side of EventBridgeTest's cross-process test; mirrors an event over a
+ * pair of ring files and echoes every value it receives until it receives "quit".
+ * Arguments: the ring file to write to, the ring file to read from.
+ */
+public class BridgeEchoProcess {
+  public static void main(String[] args) throws Exception {
+    Event<String> event = new Event<>();
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    Thread main = Thread.currentThread();
+    event.addListener((String val) -> {
+      // only the values of the other process (local triggers are observed too)
+      if(Thread.currentThread() != main) received.add(val);
+    });
+
+    MappedRingTransport transport = new MappedRingTransport(Paths.get(args[0]), Paths.get(args[1]), 4096)
+      .setIdleStrategy(0, 5000000000L); // only wake up when signalled
+    EventBridge<String> bridge = new EventBridge<>(event, EventCodec.strings(), transport);
+    bridge.start();
+
+    boolean connected = false;
+    long end = System.currentTimeMillis() + 10000;
+
+    while(System.currentTimeMillis() < end){
+      String val = received.poll(20, TimeUnit.MILLISECONDS);
+
+      if(val == null){
+        // the other side only receives records sent after it attached; repeat until it answers
+        if(!connected) event.trigger("ready");
+        continue;
+      }
+
+      connected = true;
+      if(val.equals("quit")) break;
+      // (values received by the bridge's reader thread aren't sent back; echo from this thread)
+      event.trigger("echo " + val);
+    }
+
+    bridge.stop(); // (closes the transport)
+  }
+}
@@ -0,0 +1,86 @@
+package com.fuse.utils;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConflatingEventTest {
+
+  @Test public void latest_value() throws InterruptedException {
+    ConflatingEvent<Integer> event = new ConflatingEvent<>();
+    List<Integer> received = new ArrayList<>();
+    event.addListener((Integer val) -> received.add(val));
+
+    assertEquals(event.dispatchPending(), 0);
+
+    // producer on another thread
+    Thread producer = new Thread(() -> {
+      for(int i=0; i<10000; i++)
+        event.trigger(i);
+    });
+    producer.start();
+    producer.join();
+
+    assertTrue(event.hasPending());
+    assertEquals(event.dispatchPending(), 1);
+    assertEquals(received.size(), 1);
+    assertEquals((int)received.get(0), 9999);
+    assertEquals(event.getConflatedCount(), 9999);
+    assertEquals(event.dispatchPending(), 0);
+
+    event.trigger(null);
+    event.dispatchPending();
+    assertEquals(received.get(1), null);
+  }
+
+  @Test public void keyed(){
+    // payloads are {instrument, price}
+    ConflatingEvent<int[]> event = new ConflatingEvent<>((int[] p) -> p[0]);
+    List<String> received = new ArrayList<>();
+    event.addListener((int[] p) -> received.add(Integer.toString(p[0])+":"+Integer.toString(p[1])));
+
+    event.trigger(new int[]{1, 100});
+    event.trigger(new int[]{2, 200});
+    event.trigger(new int[]{1, 101});
+    event.trigger(new int[]{3, 300});
+    event.trigger(new int[]{1, 102});
+
+    assertEquals(event.dispatchPending(), 3);
+    assertEquals(String.join(",", received), "1:102,2:200,3:300");
+    assertEquals(event.getConflatedCount(), 2);
+    assertEquals(event.hasPending(), false);
+
+    event.trigger(new int[]{2, 201});
+    assertEquals(event.dispatchPending(), 1);
+    assertEquals(received.get(3), "2:201");
+  }
+
+  @Test public void executor() throws InterruptedException {
+    ExecutorService consumer = Executors.newSingleThreadExecutor();
+    ConflatingEvent<Integer> event = new ConflatingEvent<Integer>().setExecutor(consumer);
+    List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+    event.addListener((Integer val) -> {
+      received.add(val);
+      try { Thread.sleep(1); } catch(InterruptedException exc){}
+    });
+
+    for(int i=0; i<1000; i++)
+      event.trigger(i);
+
+    consumer.shutdown();
+    assertTrue(consumer.awaitTermination(5, TimeUnit.SECONDS));
+
+    // the slow consumer skipped values, but always ends with the latest one
+    assertTrue(received.size() < 1000);
+    assertEquals((int)received.get(received.size()-1), 999);
+  }
+}
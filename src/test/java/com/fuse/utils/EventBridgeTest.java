@@ -0,0 +1,291 @@
+package com.fuse.utils;
+
+import java.io.File;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fuse.utils.bridge.BridgeTransport;
+import com.fuse.utils.bridge.ChannelTransport;
+import com.fuse.utils.bridge.EventBridge;
+import com.fuse.utils.bridge.MappedRingTransport;
+
+public class EventBridgeTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private void waitFor(BooleanSupplier condition){
+    long end = System.currentTimeMillis() + 5000;
+    while(!condition.getAsBoolean() && System.currentTimeMillis() < end)
+      Thread.yield();
+  }
+
+  private void waitFor(List<String> values, int count){
+    waitFor(() -> values.size() >= count);
+  }
+
+  private void mirror(BridgeTransport transportA, BridgeTransport transportB, BooleanSupplier attached) throws Exception {
+    Event<String> a = new Event<>();
+    Event<String> b = new Event<>();
+    List<String> valuesA = new CopyOnWriteArrayList<>();
+    List<String> valuesB = new CopyOnWriteArrayList<>();
+    a.addListener((String val) -> valuesA.add(val));
+    b.addListener((String val) -> valuesB.add(val));
+
+    EventBridge<String> bridgeA = new EventBridge<>(a, EventCodec.strings(), transportA);
+    EventBridge<String> bridgeB = new EventBridge<>(b, EventCodec.strings(), transportB);
+    bridgeA.start();
+    bridgeB.start();
+    waitFor(attached);
+
+    a.trigger("from a");
+    waitFor(valuesB, 1);
+    assertEquals(String.join(",", valuesB), "from a");
+
+    bridgeB.batch(() -> {
+      b.trigger("from b 1");
+      b.trigger("from b 2");
+    });
+
+    waitFor(valuesA, 3);
+    assertEquals(String.join(",", valuesA), "from a,from b 1,from b 2");
+
+    // remote payloads aren't echoed back; an echo would arrive before this marker
+    a.trigger("marker");
+    waitFor(valuesB, 4);
+    assertEquals(String.join(",", valuesB), "from a,from b 1,from b 2,marker");
+
+    bridgeA.stop();
+    bridgeB.stop();
+  }
+
+  @Test public void mappedRing() throws Exception {
+    Path dir = tmp.newFolder("rings").toPath();
+    MappedRingTransport ringA = new MappedRingTransport(dir.resolve("a.ring"), dir.resolve("b.ring"), 1024);
+    MappedRingTransport ringB = new MappedRingTransport(dir.resolve("b.ring"), dir.resolve("a.ring"), 1024);
+    mirror(ringA, ringB, () -> ringA.isAttached() && ringB.isAttached());
+  }
+
+  @Test public void channels() throws Exception {
+    Pipe ab = Pipe.open();
+    Pipe ba = Pipe.open();
+    mirror(
+      new ChannelTransport(ba.source(), ab.sink()),
+      new ChannelTransport(ab.source(), ba.sink()),
+      () -> true);
+  }
+
+  @Test public void channels_invalidRecordLength() throws Exception {
+    Pipe pipe = Pipe.open();
+    ChannelTransport transport = new ChannelTransport(pipe.source(), pipe.sink(), 64);
+    ByteBuffer header = ByteBuffer.allocate(4);
+
+    for(int len : new int[]{ -8, 1000 }){
+      header.clear();
+      header.putInt(len).flip();
+      pipe.sink().write(header);
+
+      try {
+        transport.receive((ByteBuffer record) -> {}, 0);
+        fail("expected an exception");
+      } catch(UncheckedIOException exc){
+        assertTrue(exc.getCause() instanceof StreamCorruptedException);
+      }
+    }
+
+    transport.close();
+  }
+
+  @Test public void listenerErrorsAreReported() throws Exception {
+    Pipe ab = Pipe.open();
+    Pipe ba = Pipe.open();
+    Event<String> a = new Event<>();
+    Event<String> b = new Event<>();
+    List<String> valuesB = new CopyOnWriteArrayList<>();
+    List<RuntimeException> errors = new CopyOnWriteArrayList<>();
+
+    b.addListener((String val) -> {
+      if(val.equals("bad")) throw new IllegalStateException("listener failed");
+      valuesB.add(val);
+    });
+
+    EventBridge<String> bridgeA = new EventBridge<>(a, EventCodec.strings(), new ChannelTransport(ba.source(), ab.sink()));
+    EventBridge<String> bridgeB = new EventBridge<>(b, EventCodec.strings(), new ChannelTransport(ab.source(), ba.sink()));
+    bridgeB.getErrorEvent().addListener((RuntimeException exc) -> errors.add(exc));
+    bridgeA.start();
+    bridgeB.start();
+
+    // the reader keeps mirroring after a listener threw
+    a.trigger("bad");
+    a.trigger("good");
+    waitFor(valuesB, 1);
+    assertEquals(String.join(",", valuesB), "good");
+    assertEquals(errors.size(), 1);
+    assertEquals(errors.get(0).getMessage(), "listener failed");
+
+    bridgeA.stop();
+    bridgeB.stop();
+  }
+
+  private static ByteBuffer filled(char c){
+    ByteBuffer record = ByteBuffer.allocate(400);
+    while(record.hasRemaining()) record.put((byte)c);
+    record.flip();
+    return record;
+  }
+
+  @Test public void mappedRing_overwrittenRecordsAreNotDelivered() throws Exception {
+    Path dir = tmp.newFolder("lapped").toPath();
+    MappedRingTransport writer = new MappedRingTransport(dir.resolve("w.ring"), dir.resolve("r.ring"), 1024);
+    MappedRingTransport reader = new MappedRingTransport(dir.resolve("r.ring"), dir.resolve("w.ring"), 1024);
+    List<String> received = new ArrayList<>();
+    reader.receive((ByteBuffer record) -> {}, 0); // attach
+
+    writer.send(filled('A'));
+    writer.send(filled('B'));
+    writer.flush();
+
+    reader.receive((ByteBuffer record) -> {
+      received.add(Character.toString((char)record.get(record.position())) + Integer.toString(record.remaining()));
+
+      if(received.size() == 1){
+        // overwrite the slots of A and B, without publishing yet
+        writer.send(filled('C'));
+        writer.send(filled('D'));
+      }
+    }, 0);
+
+    // B was overwritten while the reader was still behind it; it's skipped instead of delivered as D
+    assertEquals(String.join(",", received), "A400");
+
+    writer.flush();
+    reader.receive((ByteBuffer record) -> received.add(Character.toString((char)record.get(record.position())) + Integer.toString(record.remaining())), 0);
+    assertEquals(String.join(",", received), "A400,C400,D400");
+    assertEquals(reader.getLostRecords(), 1L);
+
+    writer.close();
+    reader.close();
+  }
+
+  @Test public void mappedRing_lostRecordsAreCounted() throws Exception {
+    Path dir = tmp.newFolder("counted").toPath();
+    MappedRingTransport writer = new MappedRingTransport(dir.resolve("w.ring"), dir.resolve("r.ring"), 1024);
+    MappedRingTransport reader = new MappedRingTransport(dir.resolve("r.ring"), dir.resolve("w.ring"), 1024);
+    List<String> received = new ArrayList<>();
+    reader.receive((ByteBuffer record) -> {}, 0); // attach
+
+    // the reader falls behind by several laps at once
+    for(char c : "ABCDEFG".toCharArray())
+      writer.send(filled(c));
+    writer.flush();
+    reader.receive((ByteBuffer record) -> received.add(Character.toString((char)record.get(record.position()))), 0);
+    assertEquals(received.size(), 0);
+
+    // the skipped records are counted once the reader caught up with the writer
+    writer.send(filled('H'));
+    writer.flush();
+    reader.receive((ByteBuffer record) -> received.add(Character.toString((char)record.get(record.position()))), 0);
+    assertEquals(String.join(",", received), "H");
+    assertEquals(reader.getLostRecords(), 7L);
+
+    writer.close();
+    reader.close();
+  }
+
+  @Test public void mappedRing_idleReaderIsWoken() throws Exception {
+    Path dir = tmp.newFolder("wakeup").toPath();
+    MappedRingTransport writer = new MappedRingTransport(dir.resolve("w.ring"), dir.resolve("r.ring"), 1024);
+    // without the writer's signal the reader would only poll again after 10 seconds
+    MappedRingTransport reader = new MappedRingTransport(dir.resolve("r.ring"), dir.resolve("w.ring"), 1024)
+      .setIdleStrategy(0, 10000000000L);
+    reader.receive((ByteBuffer record) -> {}, 0); // attach
+
+    long[] receivedAt = new long[]{ 0 };
+    Thread thread = new Thread(() -> reader.receive((ByteBuffer record) -> receivedAt[0] = System.nanoTime(), 5000000000L));
+    thread.start();
+
+    Thread.sleep(300); // the reader is blocked by now
+    long sentAt = System.nanoTime();
+    writer.send(filled('A'));
+    writer.flush();
+    thread.join(5000);
+
+    assertTrue(receivedAt[0] != 0);
+    assertTrue(receivedAt[0] - sentAt < TimeUnit.MILLISECONDS.toNanos(100));
+
+    // closing wakes a blocked reader too
+    thread = new Thread(() -> reader.receive((ByteBuffer record) -> {}, 5000000000L));
+    thread.start();
+    Thread.sleep(100);
+    long closedAt = System.nanoTime();
+    reader.close();
+    thread.join(5000);
+    assertTrue(!thread.isAlive());
+    assertTrue(System.nanoTime() - closedAt < TimeUnit.SECONDS.toNanos(1));
+
+    writer.close();
+  }
+
+  @Test public void mappedRing_otherProcess() throws Exception {
+    Path dir = tmp.newFolder("process").toPath();
+    Path here = dir.resolve("a.ring");
+    Path there = dir.resolve("b.ring");
+
+    Process process = new ProcessBuilder(
+      System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+      "-cp", System.getProperty("java.class.path"),
+      BridgeEchoProcess.class.getName(), there.toString(), here.toString())
+      .inheritIO()
+      .start();
+
+    try {
+      Event<String> event = new Event<>();
+      List<String> values = new CopyOnWriteArrayList<>();
+      event.addListener((String val) -> values.add(val));
+
+      MappedRingTransport transport = new MappedRingTransport(here, there, 4096);
+      EventBridge<String> bridge = new EventBridge<>(event, EventCodec.strings(), transport);
+      bridge.start();
+
+      // the other process repeats "ready" until it received something
+      long end = System.currentTimeMillis() + 10000;
+      while(!values.contains("ready") && System.currentTimeMillis() < end)
+        Thread.sleep(10);
+      assertTrue(values.contains("ready"));
+      event.trigger("one");
+      waitFor(() -> values.contains("echo one"));
+      values.clear();
+
+      // (one flush for both; an echo can't overtake the second local trigger)
+      bridge.batch(() -> {
+        event.trigger("two");
+        event.trigger("three");
+      });
+      waitFor(() -> values.contains("echo three"));
+      values.removeIf((String val) -> val.equals("ready"));
+      assertEquals(String.join(",", values), "two,three,echo two,echo three");
+
+      event.trigger("quit");
+      assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+      assertEquals(process.exitValue(), 0);
+      bridge.stop();
+    } finally {
+      process.destroyForcibly();
+    }
+  }
+}
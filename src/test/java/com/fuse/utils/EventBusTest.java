@@ -0,0 +1,126 @@
+package com.fuse.utils;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class EventBusTest {
+
+  public static class Subscriber {
+    public List<String> strings = new ArrayList<>();
+
+    @Subscribe public void onInteger(Integer i){ strings.add("Integer:"+i.toString()); }
+    @Subscribe(priority=1) public void onNumber(Number n){ strings.add("Number:"+n.toString()); }
+    @Subscribe(topic="greetings") public void onGreeting(String s){ strings.add("greeting:"+s); }
+    public void notAnnotated(String s){ strings.add("bad"); }
+  }
+
+  /** not public; invoked through a method handle instead of a generated Consumer */
+  private static class PrivateSubscriber extends Subscriber {
+    @Subscribe void onString(String s){ strings.add("String:"+s); }
+    // overrides are subscribed once
+    @Override @Subscribe public void onInteger(Integer i){ strings.add("Override:"+i.toString()); }
+  }
+
+  @Test public void publish_by_type(){
+    EventBus bus = new EventBus();
+    List<String> strings = new ArrayList<>();
+
+    bus.subscribe(Integer.class, (Integer i) -> strings.add("Integer:"+i.toString()), this);
+    bus.subscribe(Number.class, (Number n) -> strings.add("Number:"+n.toString()), this);
+    bus.subscribe(Comparable.class, (Comparable c) -> strings.add("Comparable"), this);
+    bus.subscribe(String.class, (String s) -> strings.add("String:"+s));
+
+    bus.publish(5);
+    assertEquals(String.join(",", strings), "Integer:5,Number:5,Comparable");
+
+    strings.clear();
+    bus.publish(2.5f);
+    assertEquals(String.join(",", strings), "Number:2.5,Comparable");
+
+    // unsubscribing invalidates the cached resolution for Integer
+    strings.clear();
+    bus.unsubscribe(this);
+    assertEquals(bus.hasOwner(this), false);
+    bus.publish(6);
+    bus.publish("foo");
+    assertEquals(String.join(",", strings), "String:foo");
+  }
+
+  @Test public void publish_by_topic(){
+    EventBus bus = new EventBus();
+    List<String> strings = new ArrayList<>();
+
+    bus.subscribe("greetings", (String s) -> strings.add(s), this);
+    bus.subscribeOnce("greetings", (String s) -> strings.add("once:"+s));
+
+    bus.publish("greetings", "hello");
+    bus.publish("farewells", "bye");
+    bus.publish("greetings", "hi");
+    assertEquals(String.join(",", strings), "hello,once:hello,hi");
+
+    bus.unsubscribe(this);
+    bus.publish("greetings", "hey");
+    assertEquals(strings.size(), 3);
+  }
+
+  @Test public void subscribeAll(){
+    EventBus bus = new EventBus();
+    Subscriber sub = new Subscriber();
+    PrivateSubscriber priv = new PrivateSubscriber();
+
+    bus.subscribeAll(sub);
+    bus.subscribeAll(priv);
+
+    bus.publish(3);
+    assertEquals(String.join(",", sub.strings), "Integer:3,Number:3");
+    assertEquals(String.join(",", priv.strings), "Override:3,Number:3");
+
+    bus.publish("foo");
+    bus.publish("greetings", "hi");
+    assertEquals(String.join(",", sub.strings), "Integer:3,Number:3,greeting:hi");
+    assertEquals(String.join(",", priv.strings), "Override:3,Number:3,String:foo,greeting:hi");
+
+    bus.unsubscribe(sub);
+    assertEquals(bus.hasOwner(sub), false);
+    assertEquals(bus.hasOwner(priv), true);
+    bus.publish(4);
+    assertEquals(sub.strings.size(), 3);
+    assertEquals(priv.strings.size(), 6);
+  }
+
+  @Test public void concurrent_subscribe_and_cleanup() throws InterruptedException {
+    EventBus bus = new EventBus();
+    AtomicInteger count = new AtomicInteger(0);
+    AtomicBoolean done = new AtomicBoolean(false);
+    int total = 20000;
+
+    // keeps emptying (and thereby removing) the Integer event while the main thread subscribes to it
+    Thread churn = new Thread(() -> {
+      Consumer<Integer> temp = (Integer i) -> {};
+      while(!done.get()){
+        bus.subscribe(Integer.class, temp);
+        bus.unsubscribe(Integer.class, temp);
+      }
+    });
+
+    churn.start();
+    try {
+      for(int i=0; i<total; i++)
+        bus.subscribe(Integer.class, (Integer v) -> count.incrementAndGet(), this);
+    } finally {
+      done.set(true);
+      churn.join();
+    }
+
+    // none of the subscriptions got lost with an event that was removed concurrently
+    bus.publish(1);
+    assertEquals(count.get(), total);
+  }
+}
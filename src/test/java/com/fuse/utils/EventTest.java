@@ -1,14 +1,36 @@
 package com.fuse.utils;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fuse.utils.extensions.JournalHistoryStore;
+import com.fuse.utils.extensions.ListenerProfiler;
 
 public class EventTest {
 
@@ -16,6 +38,8 @@ public class EventTest {
   private Event<String> event;
   private Object owner;
 
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test public void addListener_trigger_removeListeners(){
     event = new Event<String>();
     result = "";
@@ -164,6 +188,612 @@ public class EventTest {
 		assertEquals(numbers.size(), 2);
 	}
 
+	@Test public void replayFrom(){
+		Event<String> e = new Event<>();
+		e.enableHistory();
+		e.trigger("a");
+		e.trigger("b");
+		e.trigger("c");
+
+		// the listener triggers the event during the replay; that value is delivered
+		// live after the replay, exactly once
+		List<String> values = new ArrayList<>();
+		e.replayFrom(1, (String val) -> {
+			values.add(val);
+			if(val.equals("c")) e.trigger("d");
+		}, this);
+
+		assertEquals(String.join(",", values), "b,c,d");
+		assertEquals(String.join(",", e.getHistory()), "a,b,c,d");
+
+		e.trigger("e");
+		assertEquals(String.join(",", values), "b,c,d,e");
+
+		// cursor based replay
+		List<String> values2 = new ArrayList<>();
+		e.replay(e.historySpliterator(3), (String val) -> values2.add(val), this);
+		assertEquals(String.join(",", values2), "d,e");
+	}
+
+	@Test public void journalHistory() throws IOException {
+		Path dir = tmp.newFolder("journal").toPath();
+
+		Event<String> e = new Event<>();
+		// tiny segments to force roll-overs
+		e.enableHistory(new JournalHistoryStore<String>(dir, "test", EventCodec.strings()).setSegmentSize(64));
+
+		for(int i=0; i<20; i++)
+			e.trigger("value"+Integer.toString(i));
+
+		assertEquals(e.getHistory().size(), 20);
+		assertEquals(e.getHistory().get(19), "value19");
+		assertTrue(dir.toFile().listFiles().length > 1);
+
+		// disabling closes the journal, but keeps the files
+		e.enableHistory(false);
+
+		// "restart"; replay the history from disk
+		Event<String> restarted = new Event<>();
+		JournalHistoryStore<String> store = new JournalHistoryStore<String>(dir, "test", EventCodec.strings()).setSegmentSize(64);
+		restarted.enableHistory(store);
+		List<String> values = new ArrayList<>();
+		restarted.withAllValues((String val) -> values.add(val));
+		assertEquals(values.size(), 20);
+		assertEquals(values.get(0), "value0");
+		assertEquals(values.get(19), "value19");
+
+		// new values continue the sequence
+		restarted.trigger("value20");
+		assertEquals(values.size(), 21);
+		assertEquals(store.nextSequence(), 21);
+
+		// retention by size drops the oldest segments
+		store.setRetention(128, Long.MAX_VALUE);
+		for(int i=21; i<40; i++)
+			restarted.trigger("value"+Integer.toString(i));
+		assertTrue(store.firstSequence() > 0);
+		List<String> retained = restarted.getHistory();
+		assertEquals(retained.get(retained.size()-1), "value39");
+		assertEquals(retained.size(), (int)(store.nextSequence() - store.firstSequence()));
+	}
+
+	static class Frame extends Flyweight {
+		public int id(){ return buffer.getInt(offset); }
+		public float value(){ return buffer.getFloat(offset + 4); }
+	}
+
+	@Test public void flyweightEvent(){
+		FlyweightEvent<Frame> e = new FlyweightEvent<>(Frame::new);
+		List<Frame> frames = new ArrayList<>();
+		List<String> values = new ArrayList<>();
+
+		e.addListener((Frame f) -> {
+			frames.add(f);
+			values.add(Integer.toString(f.id())+":"+Float.toString(f.value()));
+		});
+
+		ByteBuffer buf = ByteBuffer.allocate(16);
+		buf.putInt(0, 1).putFloat(4, 0.5f).putInt(8, 2).putFloat(12, 1.5f);
+		e.trigger(buf, 0, 8);
+		e.trigger(buf, 8, 8);
+
+		assertEquals(String.join(",", values), "1:0.5,2:1.5");
+		// the same flyweight instance is used for every trigger
+		assertTrue(frames.get(0) == frames.get(1));
+
+		// codec; decode makes a detached copy, view wraps the source buffer
+		FlyweightCodec<Frame> codec = new FlyweightCodec<>(Frame::new);
+		ByteBuffer encoded = ByteBuffer.allocate(8);
+		codec.encode(frames.get(0), encoded);
+		encoded.flip();
+		Frame copy = codec.decode(encoded.duplicate());
+		buf.putInt(8, 3);
+		assertEquals(copy.id(), 2);
+		ByteBuffer src = buf.duplicate();
+		src.position(8);
+		Frame view = codec.view(src);
+		assertTrue(view.buffer() == src);
+		assertEquals(view.id(), 3);
+	}
+
+	@Test public void parallelDispatch() throws Exception {
+		Event<Integer> e = new Event<>();
+		AtomicInteger sum = new AtomicInteger();
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+		for(int i=0; i<2000; i++){
+			e.addListener((Integer val) -> {
+				threads.add(Thread.currentThread());
+				sum.addAndGet(val);
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		e.enableParallelDispatch(1000, 16, pool);
+		e.trigger(2);
+		assertEquals(sum.get(), 4000);
+
+		// exceptions are aggregated; all other listeners still run
+		e.addListener((Integer val) -> { throw new IllegalStateException("first"); });
+		e.addListener((Integer val) -> { throw new IllegalStateException("second"); });
+
+		try {
+			e.triggerAsync(1).get();
+			fail("expected an exception");
+		} catch(ExecutionException exc){
+			assertTrue(exc.getCause() instanceof ListenerDispatchException);
+			assertEquals(exc.getCause().getSuppressed().length, 2);
+		}
+
+		assertEquals(sum.get(), 6000);
+		assertTrue(threads.size() > 1);
+		pool.shutdown();
+	}
+
+	@Test public void parallelDispatch_inlineListenersAndPolicy() throws Exception {
+		Event<Integer> e = new Event<>();
+		List<Thread> onceThreads = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger calls = new AtomicInteger();
+
+		for(int i=0; i<200; i++)
+			e.addListener((Integer val) -> calls.incrementAndGet());
+
+		Consumer<Integer> thrower = (Integer val) -> { throw new IllegalStateException("fail"); };
+		e.addListener(thrower);
+		e.enableHistory();
+		e.addOnceListener((Integer val) -> onceThreads.add(Thread.currentThread()));
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		e.enableParallelDispatch(10, 4, pool);
+		e.enableProfiling(1.0, 1000);
+		e.setErrorPolicy(Event.ErrorPolicy.CONTINUE);
+		List<Event.ListenerError<Integer>> errors = new ArrayList<>();
+		e.getErrorEvent().addListener((Event.ListenerError<Integer> err) -> errors.add(err));
+
+		for(int i=0; i<20; i++)
+			e.trigger(i);
+
+		// history runs on the triggering thread, without races; the once-listener is
+		// dispatched like the other listeners, but still only invoked once
+		assertEquals(e.getHistory().size(), 20);
+		assertEquals((int)e.getHistory().get(19), 19);
+		assertEquals(onceThreads.size(), 1);
+		assertEquals(calls.get(), 200 * 20);
+
+		// the policy and profiler apply to the parallel listeners
+		assertEquals(errors.size(), 20);
+		assertEquals(errors.get(0).getListener(), thrower);
+		assertTrue(e.getProfile().size() > 200);
+
+		e.setErrorPolicy(Event.ErrorPolicy.RETHROW_AFTER);
+		try {
+			e.trigger(20);
+			fail("expected an exception");
+		} catch(ListenerDispatchException exc){
+			assertEquals(exc.getSuppressed().length, 1);
+		}
+
+		assertEquals(errors.size(), 21);
+		pool.shutdown();
+	}
+
+	@Test public void parallelDispatch_listenerModifications() throws Exception {
+		Event<Integer> e = new Event<>();
+		AtomicInteger calls = new AtomicInteger();
+		AtomicInteger added = new AtomicInteger();
+		Consumer<Integer> addedListener = (Integer val) -> added.incrementAndGet();
+
+		// every listener removes itself and registers another one, from a pool thread
+		for(int i=0; i<5000; i++){
+			List<Consumer<Integer>> self = new ArrayList<>();
+			self.add((Integer val) -> {
+				calls.incrementAndGet();
+				e.removeListener(self.get(0));
+				e.addListener(addedListener, this);
+			});
+			e.addListener(self.get(0));
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		e.enableParallelDispatch(10, 4, pool);
+		e.trigger(1);
+
+		// applied by the triggering thread once the dispatch was done
+		assertEquals(calls.get(), 5000);
+		assertEquals(e.isTriggering(), false);
+		assertEquals(e.size(), 5000);
+		assertEquals(e.getOwnerListeners(this).size(), 5000);
+
+		e.trigger(2);
+		assertEquals(calls.get(), 5000);
+		assertEquals(added.get(), 5000);
+		pool.shutdown();
+	}
+
+	@Test public void triggerAsync_policyAndProfiler() throws Exception {
+		Event<Integer> e = new Event<>();
+		AtomicInteger calls = new AtomicInteger();
+		Consumer<Integer> thrower = (Integer val) -> { throw new IllegalStateException("fail"); };
+
+		for(int i=0; i<10; i++)
+			e.addListener((Integer val) -> calls.incrementAndGet());
+		e.addListener(thrower);
+		e.enableProfiling(1.0, 100);
+		e.setErrorPolicy(Event.ErrorPolicy.CONTINUE);
+		List<Event.ListenerError<Integer>> errors = Collections.synchronizedList(new ArrayList<>());
+		e.getErrorEvent().addListener((Event.ListenerError<Integer> err) -> errors.add(err));
+
+		// reported instead of failing the future
+		e.triggerAsync(1).get();
+		assertEquals(calls.get(), 10);
+		assertEquals(errors.size(), 1);
+		assertTrue(errors.get(0).getListener() == thrower);
+		assertEquals(e.getProfile().size(), 11);
+
+		e.setErrorPolicy(Event.ErrorPolicy.RETHROW_AFTER);
+		try {
+			e.triggerAsync(2).get();
+			fail("expected an exception");
+		} catch(ExecutionException exc){
+			assertTrue(exc.getCause() instanceof ListenerDispatchException);
+		}
+
+		assertEquals(errors.size(), 2);
+
+		// modifications by the async listeners are applied by the next trigger
+		e.setErrorPolicy(Event.ErrorPolicy.CONTINUE);
+		e.addListener((Integer val) -> e.removeListener(thrower));
+		e.triggerAsync(3).get();
+		e.trigger(4);
+		assertEquals(errors.size(), 3);
+		assertEquals(e.hasListener(thrower), false);
+	}
+
+	@Test public void executorListeners() throws Exception {
+		Event<Integer> e = new Event<>();
+		ExecutorService thread = Executors.newSingleThreadExecutor();
+		AtomicInteger tasks = new AtomicInteger();
+		Executor counting = (Runnable r) -> { tasks.incrementAndGet(); thread.execute(r); };
+		List<String> values = Collections.synchronizedList(new ArrayList<>());
+		Object owner = new Object();
+
+		e.addListener((Integer val) -> values.add("sync:"+val));
+		e.addListener((Integer val) -> values.add("a:"+val), owner, counting);
+		e.addListener((Integer val) -> values.add("b:"+val), null, counting);
+		assertTrue(e.hasOwner(owner));
+		assertEquals(e.size(), 3);
+
+		// block the executor, so all triggers end up in a single task
+		CountDownLatch gate = new CountDownLatch(1);
+		thread.execute(() -> { try { gate.await(); } catch(InterruptedException exc){} });
+
+		e.trigger(1);
+		e.trigger(2);
+		e.trigger(3);
+		assertEquals(String.join(",", values), "sync:1,sync:2,sync:3");
+		gate.countDown();
+		thread.submit(() -> {}).get();
+		assertEquals(tasks.get(), 1);
+		assertEquals(String.join(",", values), "sync:1,sync:2,sync:3,a:1,b:1,a:2,b:2,a:3,b:3");
+
+		values.clear();
+		e.removeListeners(owner);
+		assertFalse(e.hasOwner(owner));
+		assertEquals(e.size(), 2);
+		e.trigger(4);
+		thread.submit(() -> {}).get();
+		assertEquals(String.join(",", values), "sync:4,b:4");
+		thread.shutdown();
+	}
+
+	@Test public void executorListeners_error(){
+		Event<String> e = new Event<>();
+		List<String> values = new ArrayList<>();
+		List<Error> errors = new ArrayList<>();
+		Executor direct = (Runnable r) -> {
+			try { r.run(); } catch(Error err){ errors.add(err); }
+		};
+
+		e.addListener((String val) -> {
+			if(val.equals("fatal")) throw new AssertionError(val);
+			values.add(val);
+		}, null, direct);
+
+		// an Error escaping the delivery doesn't stop the next deliveries
+		e.trigger("fatal");
+		e.trigger("next");
+		assertEquals(errors.size(), 1);
+		assertEquals(String.join(",", values), "next");
+		assertEquals(e.size(), 1);
+	}
+
+	@Test public void triggerStamps(){
+		Event<String> e = new Event<>();
+		List<String> log = new ArrayList<>();
+
+		e.addListener((String val) -> {
+			if(val.equals("outer")) e.trigger("inner");
+			log.add(val+":"+e.getTriggerSequence());
+		});
+
+		e.trigger("plain");
+		assertEquals(e.getTriggerSequence(), -1);
+
+		e.enableTriggerStamps(true);
+		e.enableHistory();
+		long before = System.nanoTime();
+		e.trigger("first");
+		e.trigger("outer");
+		assertEquals(String.join(",", log), "plain:-1,first:0,inner:2,outer:1");
+		assertEquals(e.getTriggerSequence(), -1);
+
+		// replay exposes the recorded stamps
+		List<String> replayed = new ArrayList<>();
+		e.replayFrom(0, (String val) -> {
+			assertTrue(e.getTriggerNanos() >= before);
+			replayed.add(val+":"+e.getTriggerSequence());
+		}, this);
+		assertEquals(String.join(",", replayed), "first:0,inner:2,outer:1");
+
+		// and the listener receives live triggers afterwards
+		e.trigger("live");
+		assertEquals(replayed.get(3), "live:3");
+	}
+
+	@Test public void isolation() throws InterruptedException {
+		Event<String> e = new Event<>();
+		List<String> values = Collections.synchronizedList(new ArrayList<>());
+		AtomicBoolean interrupted = new AtomicBoolean(false);
+
+		Consumer<String> stuck = (String val) -> {
+			try {
+				Thread.sleep(10000);
+			} catch(InterruptedException exc){
+				interrupted.set(true);
+			}
+		};
+
+		e.addListener((String val) -> values.add("a:"+val));
+		e.addListener(stuck);
+		e.addListener((String val) -> values.add("b:"+val));
+		e.enableIsolation(100, TimeUnit.MILLISECONDS, true);
+
+		long t = System.currentTimeMillis();
+		e.trigger("x");
+		assertTrue(System.currentTimeMillis() - t < 5000);
+		assertEquals(values.size(), 2);
+		assertEquals(e.getIsolation().getTimeoutCount(), 1);
+		assertEquals((long)e.getIsolation().getTimedOutListeners().get(stuck), 1);
+
+		// interrupted and unsubscribed after timing out
+		for(int i=0; i<500 && !interrupted.get(); i++) Thread.sleep(10);
+		assertTrue(interrupted.get());
+		assertEquals(e.size(), 2);
+		assertFalse(e.hasListener(stuck));
+
+		e.disableIsolation();
+		e.trigger("y");
+		assertEquals(values.size(), 4);
+	}
+
+	@Test public void isolation_inlineListenersPolicyAndStragglers() throws InterruptedException {
+		Event<String> e = new Event<>();
+		Thread triggering = Thread.currentThread();
+		List<Thread> onceThreads = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+
+		// ignores interrupts
+		Consumer<String> hanging = (String val) -> {
+			while(true){
+				try {
+					release.await();
+					return;
+				} catch(InterruptedException exc){}
+			}
+		};
+
+		Consumer<String> thrower = (String val) -> { throw new IllegalStateException("fail"); };
+		e.addListener(hanging);
+		e.addListener(thrower);
+		e.enableHistory();
+		e.addOnceListener((String val) -> onceThreads.add(Thread.currentThread()));
+		List<Thread> whenThreads = Collections.synchronizedList(new ArrayList<>());
+		e.whenTriggered(() -> whenThreads.add(Thread.currentThread()));
+		e.enableIsolation(50, TimeUnit.MILLISECONDS, false).setMaxStragglers(1);
+		e.enableProfiling(1.0, 10);
+		e.setErrorPolicy(Event.ErrorPolicy.CONTINUE);
+		List<Event.ListenerError<String>> errors = new ArrayList<>();
+		e.getErrorEvent().addListener((Event.ListenerError<String> err) -> errors.add(err));
+
+		e.trigger("a");
+		assertEquals(e.getHistory().size(), 1);
+		// user callbacks are isolated, only the event's own listeners (history) run on the triggering thread
+		assertEquals(onceThreads.size(), 1);
+		assertTrue(onceThreads.get(0) != triggering);
+		assertEquals(whenThreads.size(), 1);
+		assertTrue(whenThreads.get(0) != triggering);
+		assertEquals(errors.size(), 1);
+		assertEquals(errors.get(0).getListener(), thrower);
+		assertTrue(e.getProfile().size() > 0);
+
+		// the hanging listener is still running; the cap is reached so invocations are skipped
+		assertEquals(e.getIsolation().getStragglerCount(), 1);
+		e.trigger("b");
+		assertEquals(e.getIsolation().getSkippedCount(), 3L); // hanging, thrower and the whenTriggered callback
+		assertEquals(e.getHistory().size(), 2);
+
+		release.countDown();
+		for(int i=0; i<500 && e.getIsolation().getStragglerCount() > 0; i++) Thread.sleep(10);
+		assertEquals(e.getIsolation().getStragglerCount(), 0);
+		e.trigger("c");
+		assertEquals(errors.size(), 2);
+	}
+
+	@Test public void isolation_interrupted() throws InterruptedException {
+		Event<String> e = new Event<>();
+		CountDownLatch release = new CountDownLatch(1);
+
+		for(int i=0; i<3; i++){
+			// ignores interrupts
+			e.addListener((String val) -> {
+				while(true){
+					try {
+						release.await();
+						return;
+					} catch(InterruptedException exc){}
+				}
+			});
+		}
+
+		e.enableIsolation(10, TimeUnit.SECONDS, false);
+		Thread triggering = Thread.currentThread();
+		Thread interrupter = new Thread(() -> {
+			try {
+				Thread.sleep(100);
+			} catch(InterruptedException exc){}
+			triggering.interrupt();
+		});
+
+		long start = System.nanoTime();
+		interrupter.start();
+		e.trigger("a");
+
+		// stopped waiting for all listeners right away, instead of waiting up to their timeout
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertTrue(Thread.interrupted());
+		assertEquals(e.getIsolation().getStragglerCount(), 3);
+
+		interrupter.join();
+		release.countDown();
+		for(int i=0; i<500 && e.getIsolation().getStragglerCount() > 0; i++) Thread.sleep(10);
+		assertEquals(e.getIsolation().getStragglerCount(), 0);
+	}
+
+	@Test public void listenerExceptions(){
+		Event<String> e = new Event<>();
+		result = "";
+
+		// default policy; the exception propagates, but the event doesn't stay frozen
+		e.addListener((String val) -> {
+			e.addListener((String v) -> result += "added;");
+			throw new IllegalStateException("boom");
+		}, this);
+		e.addListener((String val) -> result += "second;");
+
+		try {
+			e.trigger("a");
+			fail("expected an exception");
+		} catch(IllegalStateException exc){}
+
+		assertEquals(e.isTriggering(), false);
+		assertEquals(result, "");
+		// the queued registration was performed after all
+		assertEquals(e.size(), 3);
+
+		List<String> errors = new ArrayList<>();
+		e.getErrorEvent().addListener((Event.ListenerError<String> err) -> errors.add(err.getPayload()+":"+err.getException().getMessage()));
+
+		e.removeListeners(this);
+		e.addListener((String val) -> { throw new IllegalStateException("boom"); }, this, 1);
+
+		e.setErrorPolicy(Event.ErrorPolicy.CONTINUE);
+		e.trigger("b");
+		assertEquals(result, "second;added;");
+		assertEquals(String.join(",", errors), "b:boom");
+
+		e.setErrorPolicy(Event.ErrorPolicy.STOP);
+		e.trigger("c");
+		assertEquals(result, "second;added;");
+		assertEquals(String.join(",", errors), "b:boom,c:boom");
+
+		e.setErrorPolicy(Event.ErrorPolicy.RETHROW_AFTER);
+		try {
+			e.trigger("d");
+			fail("expected an exception");
+		} catch(ListenerDispatchException exc){
+			assertEquals(exc.getSuppressed().length, 1);
+		}
+		assertEquals(result, "second;added;second;added;");
+		assertEquals(e.isTriggering(), false);
+	}
+
+	@Test public void trampolined(){
+		// a long forward chain would overflow the stack with nested triggers
+		List<Event<Integer>> chain = new ArrayList<>();
+		for(int i=0; i<20000; i++){
+			Event<Integer> e = new Event<>();
+			e.setTrampolined(Event.TrampolineOrder.DEPTH_FIRST);
+			if(i > 0) e.forward(chain.get(i-1));
+			chain.add(e);
+		}
+
+		List<Integer> values = new ArrayList<>();
+		chain.get(chain.size()-1).addListener((Integer val) -> values.add(val));
+		chain.get(0).trigger(7);
+		assertEquals(values.size(), 1);
+		assertEquals((int)values.get(0), 7);
+
+		// ordering
+		for(Event.TrampolineOrder order : Event.TrampolineOrder.values()){
+			Event<String> root = new Event<>();
+			Event<String> child = new Event<>();
+			root.setTrampolined(order);
+			child.setTrampolined(order);
+			List<String> log = new ArrayList<>();
+
+			root.addListener((String val) -> {
+				log.add(val);
+				child.trigger(val+".1");
+				child.trigger(val+".2");
+			});
+
+			child.addListener((String val) -> {
+				log.add(val);
+				if(val.length() < 4) child.trigger(val+"x");
+			});
+
+			root.trigger("r");
+			assertEquals(String.join(",", log), order == Event.TrampolineOrder.DEPTH_FIRST
+				? "r,r.1,r.1x,r.2,r.2x"
+				: "r,r.1,r.2,r.1x,r.2x");
+		}
+
+		// a throwing listener doesn't discard the queued triggers
+		Event<String> root = new Event<>();
+		Event<String> child = new Event<>();
+		root.setTrampolined(Event.TrampolineOrder.BREADTH_FIRST);
+		child.setTrampolined(Event.TrampolineOrder.BREADTH_FIRST);
+		List<String> log = new ArrayList<>();
+
+		root.addListener((String val) -> {
+			child.trigger("a");
+			child.trigger("b");
+			child.trigger("c");
+			throw new IllegalStateException("root");
+		});
+
+		child.addListener((String val) -> {
+			log.add(val);
+			if(val.equals("b")) throw new IllegalArgumentException("child");
+		});
+
+		RuntimeException caught = null;
+		try {
+			root.trigger("r");
+		} catch(RuntimeException exc){
+			caught = exc;
+		}
+
+		assertEquals(String.join(",", log), "a,b,c");
+		assertEquals(caught != null, true);
+		assertEquals(caught.getSuppressed().length, 1);
+
+		// the queue is left empty
+		log.clear();
+		child.trigger("d");
+		assertEquals(String.join(",", log), "d");
+	}
+
 	@Test public void whenTriggered(){
 		Event<String> evt = new Event<>();
 		List<String> strings = new ArrayList<>();
@@ -228,6 +858,221 @@ public class EventTest {
 		 assertEquals(result, "once");
 	}
 
+	@Test public void profiling(){
+		Event<String> event = new Event<>();
+		assertEquals(event.getProfile().size(), 0);
+
+		event.addListener((String val) -> {}, this);
+		event.addListener((String val) -> {
+			long end = System.nanoTime() + 2000000;
+			while(System.nanoTime() < end) {}
+		}, event);
+
+		// only the slowest listener fits into the table
+		event.enableProfiling(1.0, 1);
+		event.trigger("foo");
+		event.trigger("bar");
+
+		List<ListenerProfiler.Entry> profile = event.getProfile();
+		assertEquals(profile.size(), 1);
+		assertEquals(profile.get(0).getInvocations(), 2);
+		assertTrue(profile.get(0).getMaxNanos() >= 2000000);
+		assertTrue(profile.get(0).getOwnerName().startsWith(Event.class.getName()+"@"));
+		assertEquals(profile.get(0).getImplClass(), EventTest.class.getName());
+
+		// an error policy doesn't override the sample rate
+		event.getProfiler().reset();
+		event.getProfiler().setSampleRate(0.0);
+		event.setErrorPolicy(Event.ErrorPolicy.CONTINUE);
+		event.trigger("baz");
+		assertEquals(event.getProfile().size(), 0);
+
+		event.disableProfiling();
+		assertEquals(event.getProfile().size(), 0);
+		assertEquals(event.getProfiler(), null);
+	}
+
+	@Test public void profiling_doesntKeepListenersAlive(){
+		Event<String> event = new Event<>();
+		List<String> captured = new ArrayList<>();
+		Consumer<String> listener = (String val) -> captured.add(val);
+		WeakReference<Consumer<String>> ref = new WeakReference<>(listener);
+
+		event.enableProfiling(1.0, 10);
+		event.addListener(listener);
+		event.trigger("foo");
+		event.removeListener(listener);
+
+		// the (removed) listener is only referenced by the profiling data now
+		listener = null;
+		for(int i=0; i<50 && ref.get() != null; i++){
+			System.gc();
+			try { Thread.sleep(10); } catch(InterruptedException exc) {}
+		}
+
+		assertEquals(ref.get(), null);
+		assertEquals(event.getProfile().size(), 1);
+		assertEquals(event.getProfile().get(0).getInvocations(), 1L);
+		assertEquals(event.getProfile().get(0).getImplClass(), EventTest.class.getName());
+	}
+
+	@Test public void addWeakListener(){
+		Event<String> event = new Event<>();
+		List<String> strings = new ArrayList<>();
+
+		Object owner = new Object();
+		event.addWeakListener(owner, (Object o, String val) -> strings.add(val));
+		event.addWeakListener((String val) -> strings.add(val), owner);
+		assertEquals(event.size(), 2);
+		assertEquals(event.hasOwner(owner), true);
+
+		event.trigger("foo");
+		assertEquals(strings.size(), 2);
+
+		// owner gets garbage-collected; listeners get pruned at the next trigger
+		owner = null;
+		for(int i=0; i<50 && event.size() > 0; i++){
+			System.gc();
+			try { Thread.sleep(10); } catch(InterruptedException exc) {}
+			event.trigger("bar");
+		}
+
+		assertEquals(event.size(), 0);
+	}
+
+	@Test public void addWeakListener_collectedOwner(){
+		Event<String> event = new Event<>();
+		List<String> strings = new ArrayList<>();
+		Consumer<String> listener = (String val) -> strings.add(val);
+		Object strongOwner = new Object();
+		Object weakOwner = new Object();
+
+		// the same listener, registered with a strong and a weak owner
+		event.addListener(listener, strongOwner);
+		event.addWeakListener(listener, weakOwner);
+		assertEquals(event.size(), 2);
+
+		// registrations of collected owners aren't counted anymore, even before they're pruned
+		weakOwner = null;
+		for(int i=0; i<50 && event.size() > 1; i++){
+			System.gc();
+			try { Thread.sleep(10); } catch(InterruptedException exc) {}
+		}
+
+		assertEquals(event.size(), 1);
+
+		// only the registration of the collected owner is pruned
+		event.trigger("foo");
+		assertEquals(String.join(",", strings), "foo");
+		assertEquals(event.size(), 1);
+		assertTrue(event.hasOwner(strongOwner));
+	}
+
+	@Test public void filter_map(){
+		Event<Integer> source = new Event<>();
+		List<String> strings = new ArrayList<>();
+
+		Event<String> derived = source
+			.filter((Integer i) -> i > 2)
+			.map((Integer i) -> i * 10)
+			.filter((Integer i) -> i != 50)
+			.map((Integer i) -> "#" + Integer.toString(i));
+
+		// unused operator chains don't subscribe to their source
+		assertEquals(source.size(), 0);
+
+		derived.addListener((String val) -> strings.add(val), this);
+		// the whole chain is fused into a single listener
+		assertEquals(source.size(), 1);
+
+		for(int i=0; i<7; i++)
+			source.trigger(i);
+
+		assertEquals(String.join(",", strings), "#30,#40,#60");
+
+		derived.removeListeners(this);
+		assertEquals(source.size(), 0);
+	}
+
+	@Test public void addListener_priority(){
+		Event<String> event = new Event<>();
+		result = "";
+
+		event.addListener((String val) -> result += "a");
+		event.addListener((String val) -> result += "b", this, -1);
+		event.addListener((String val) -> result += "c", this, 5);
+		event.addListener((String val) -> result += "d");
+		event.addListener((String val) -> result += "e", this, 5);
+
+		event.trigger("foo");
+		assertEquals(result, "ceadb");
+
+		event.removeListeners(this);
+		result = "";
+		event.trigger("bar");
+		assertEquals(result, "ad");
+	}
+
+	@Test public void subscribeAll(){
+		Event<Integer> event = new Event<>();
+		EventBusTest.Subscriber sub = new EventBusTest.Subscriber();
+
+		// only the methods that accept Integers
+		event.subscribeAll(sub, Integer.class);
+		assertEquals(event.size(), 2);
+		event.trigger(5);
+		// onNumber has a higher priority
+		assertEquals(String.join(",", sub.strings), "Number:5,Integer:5");
+
+		event.removeListeners(sub);
+		assertEquals(event.size(), 0);
+	}
+
+	@Test public void listenerStorage(){
+		// grows from no listeners, through a single listener, to an indexed array and back
+		Event<Integer> event = new Event<>();
+		Object owner = new Object();
+		List<Consumer<Integer>> listeners = new ArrayList<>();
+		List<Integer> values = new ArrayList<>();
+
+		assertEquals(event.getAllListeners().size(), 0);
+		event.trigger(0);
+
+		for(int i=0; i<40; i++){
+			final int idx = i;
+			Consumer<Integer> l = (Integer val) -> values.add(idx);
+			listeners.add(l);
+			event.addListener(l, i % 2 == 0 ? owner : null);
+
+			assertEquals(event.size(), i+1);
+			assertTrue(event.hasListener(l));
+			assertEquals(event.getOwner(l), i % 2 == 0 ? owner : null);
+		}
+
+		event.trigger(1);
+		assertEquals(values.size(), 40);
+		assertEquals((int)values.get(39), 39);
+
+		event.removeListeners(owner);
+		assertEquals(event.size(), 20);
+		assertFalse(event.hasOwner(owner));
+		assertFalse(event.hasListener(listeners.get(0)));
+		assertTrue(event.hasListener(listeners.get(1)));
+
+		for(int i=1; i<39; i+=2)
+			event.removeListener(listeners.get(i));
+
+		assertEquals(event.size(), 1);
+		assertEquals(event.getAllListeners().get(0), listeners.get(39));
+		values.clear();
+		event.trigger(2);
+		assertEquals(values.size(), 1);
+
+		event.removeListener(listeners.get(39));
+		assertEquals(event.size(), 0);
+		assertFalse(event.hasListener(listeners.get(39)));
+	}
+
   @Test public void raceConditionsTwoThreadsStressTest() {
     event = new Event<>();
 
@@ -390,4 +1235,76 @@ public class EventTest {
 		// assertTrue((t2-t1) < 50); // averages around 20 on macbook
     // 	assertTrue((t2-t1) > 10);
 	}
+
+  @Test public void batchRegistration(){
+    Event<String> event = new Event<>();
+    Object owner = new Object();
+    List<String> order = new ArrayList<>();
+    List<Consumer<String>> many = new ArrayList<>();
+
+    for(int i=0; i<1000; i++){
+      final int idx = i;
+      many.add((String val) -> { if(idx % 500 == 0) order.add("many"+Integer.toString(idx)); });
+    }
+
+    event.addListener((String val) -> order.add("first"), null, 5);
+    event.addListeners(many, owner);
+    assertEquals(event.size(), 1001);
+
+    Consumer<String> low = (String val) -> order.add("low");
+    Consumer<String> high = (String val) -> order.add("high");
+    Consumer<String> mid = (String val) -> order.add("mid");
+
+    // removals are applied before additions, additions are placed like sequential priority registrations
+    try(Event.Batch<String> batch = event.batch()){
+      batch.add(low, null, -1).add(high, null, 10).add(mid, null, 5);
+      batch.remove(many.get(0));
+      assertEquals(event.size(), 1001); // not published yet
+    }
+
+    assertEquals(event.size(), 1003);
+    event.trigger("a");
+    assertEquals(String.join(",", order), "high,first,mid,many500,low");
+    assertEquals(event.getPriority(mid), 5);
+
+    // staged during trigger, published when the trigger is done
+    order.clear();
+    event.addListener((String val) -> {
+      event.batch().removeOwner(owner).remove(high).publish();
+      assertEquals(event.size(), 1004);
+    });
+    event.trigger("b");
+    assertEquals(event.size(), 4);
+    assertFalse(event.hasOwner(owner));
+    assertFalse(event.hasListener(high));
+
+    event.removeListeners(null);
+    assertEquals(event.size(), 0);
+  }
+
+  @Test public void batch_executorListeners(){
+    Event<String> event = new Event<>();
+    List<String> values = new ArrayList<>();
+    Object owner = new Object();
+    Consumer<String> direct = (String val) -> values.add("direct:"+val);
+    event.addListener((String val) -> values.add("owned:"+val), owner, (Runnable r) -> r.run());
+    event.addListener(direct, null, (Runnable r) -> r.run());
+
+    // removals made during a trigger apply to executor listeners when they apply to the others
+    event.addListener((String val) -> {
+      event.batch().removeOwner(owner).publish();
+      event.removeListener(direct);
+      values.add("owned:"+event.hasOwner(owner)+",direct:"+event.hasListener(direct));
+    }, this);
+
+    event.trigger("a");
+    assertEquals(String.join(",", values), "owned:a,direct:a,owned:true,direct:true");
+    assertFalse(event.hasOwner(owner));
+    assertFalse(event.hasListener(direct));
+
+    values.clear();
+    event.removeListeners(this);
+    event.trigger("b");
+    assertEquals(values.size(), 0);
+  }
 }
@@ -0,0 +1,89 @@
+package com.fuse.utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PartitionedEventTest {
+
+  @Test public void per_key_ordering() throws InterruptedException {
+    // payloads are {device, counter}
+    PartitionedEvent<Integer, int[]> event = new PartitionedEvent<>((int[] p) -> p[0], 4);
+    Map<Integer, List<Integer>> received = new ConcurrentHashMap<>();
+    Map<Thread, Boolean> threads = new ConcurrentHashMap<>();
+
+    event.addListener((int[] p) -> {
+      threads.put(Thread.currentThread(), true);
+      received.computeIfAbsent(p[0], (Integer k) -> Collections.synchronizedList(new ArrayList<>())).add(p[1]);
+    }, this);
+
+    // multiple producers
+    List<Thread> producers = new ArrayList<>();
+    for(int t=0; t<3; t++){
+      final int producer = t;
+      Thread thread = new Thread(() -> {
+        for(int i=0; i<1000; i++)
+          event.trigger(new int[]{ producer * 10 + (i % 10), i });
+      });
+      producers.add(thread);
+      thread.start();
+    }
+
+    for(Thread thread : producers) thread.join();
+    assertTrue(event.flush(5, TimeUnit.SECONDS));
+
+    assertEquals(received.size(), 30);
+    for(List<Integer> values : received.values()){
+      assertEquals(values.size(), 100);
+      for(int i=1; i<values.size(); i++)
+        assertTrue(values.get(i-1) < values.get(i));
+    }
+
+    assertTrue(threads.size() > 1);
+
+    event.removeListeners(this);
+    event.trigger(new int[]{ 0, 5000 });
+    assertTrue(event.flush(5, TimeUnit.SECONDS));
+    assertEquals(received.get(0).size(), 100);
+    event.destroy();
+  }
+
+  @Test public void listener_exceptions() throws InterruptedException {
+    PartitionedEvent<Integer, Integer> event = new PartitionedEvent<>((Integer p) -> p, 2);
+    List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+    List<Event.ListenerError<Integer>> errors = Collections.synchronizedList(new ArrayList<>());
+    event.getErrorEvent().addListener((Event.ListenerError<Integer> err) -> errors.add(err));
+
+    event.addListener((Integer p) -> { if(p % 2 == 0) throw new IllegalStateException("even"); });
+    event.addListener((Integer p) -> received.add(p));
+
+    for(int i=0; i<10; i++)
+      event.trigger(i);
+
+    // the lanes survive; flush doesn't time out
+    assertTrue(event.flush(5, TimeUnit.SECONDS));
+    assertEquals(received.size(), 5);
+    assertEquals(errors.size(), 5);
+    assertEquals(errors.get(0).getListener(), null);
+    assertEquals(errors.get(0).getException().getMessage(), "even");
+
+    // continue with the remaining listeners
+    event.setErrorPolicy(Event.ErrorPolicy.CONTINUE);
+    for(int i=10; i<20; i++)
+      event.trigger(i);
+
+    assertTrue(event.flush(5, TimeUnit.SECONDS));
+    assertEquals(received.size(), 15);
+    assertEquals(errors.size(), 10);
+    assertTrue(errors.get(9).getListener() != null);
+    event.destroy();
+  }
+}
@@ -1,10 +1,20 @@
 package com.fuse.utils;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import org.junit.Ignore;
 
+import com.fuse.utils.extensions.StateHistory;
+
 public class StateTest {
 
   @Test public void set_value_push(){
@@ -80,33 +90,33 @@ public class StateTest {
 
   @Test public void reset(){
     State<Integer> s = new State<Integer>();
-    s.newValueEvent.enableHistory();
-    s.initializedEvent.enableHistory();
+    s.getNewValueEvent().enableHistory();
+    s.getInitializedEvent().enableHistory();
 
     assertEquals(s.isInitialized(), false);
-    assertEquals(s.newValueEvent.getHistory().size(), 0);
-    assertEquals(s.initializedEvent.getHistory().size(), 0);
+    assertEquals(s.getNewValueEvent().getHistory().size(), 0);
+    assertEquals(s.getInitializedEvent().getHistory().size(), 0);
 
     s.set(23);
     assertEquals(s.isInitialized(), true);
-    assertEquals(s.newValueEvent.getHistory().size(), 1);
-    assertEquals(s.initializedEvent.getHistory().size(), 1);
+    assertEquals(s.getNewValueEvent().getHistory().size(), 1);
+    assertEquals(s.getInitializedEvent().getHistory().size(), 1);
 
     s.set(25);
     assertEquals(s.isInitialized(), true);
-    assertEquals(s.newValueEvent.getHistory().size(), 2);
-    assertEquals(s.initializedEvent.getHistory().size(), 1);
+    assertEquals(s.getNewValueEvent().getHistory().size(), 2);
+    assertEquals(s.getInitializedEvent().getHistory().size(), 1);
 
     s.reset();
     assertEquals(s.val(), null);
     assertEquals(s.isInitialized(), false);
-    assertEquals(s.newValueEvent.getHistory().size(), 2);
-    assertEquals(s.initializedEvent.getHistory().size(), 1);
+    assertEquals(s.getNewValueEvent().getHistory().size(), 2);
+    assertEquals(s.getInitializedEvent().getHistory().size(), 1);
 
     s.set(31);
     assertEquals(s.isInitialized(), true);
-    assertEquals(s.newValueEvent.getHistory().size(), 3);
-    assertEquals(s.initializedEvent.getHistory().size(), 2);
+    assertEquals(s.getNewValueEvent().getHistory().size(), 3);
+    assertEquals(s.getInitializedEvent().getHistory().size(), 2);
   }
 
   @Test public void push_to_other_state(){
@@ -125,21 +135,21 @@ public class StateTest {
 
   @Test public void changeEvent(){
     State<Integer> numberState = new State<>(5);
-    numberState.changeEvent.enableHistory();
+    numberState.getChangeEvent().enableHistory();
     numberState.set(6);
-    assertEquals((int)numberState.changeEvent.getHistory().get(0).current, 6);
-    assertEquals((int)numberState.changeEvent.getHistory().get(0).previous, 5);
-    assertEquals((int)numberState.changeEvent.getHistory().size(), 1);
+    assertEquals((int)numberState.getChangeEvent().getHistory().get(0).current, 6);
+    assertEquals((int)numberState.getChangeEvent().getHistory().get(0).previous, 5);
+    assertEquals((int)numberState.getChangeEvent().getHistory().size(), 1);
     numberState.set(null);
-    assertEquals((int)numberState.changeEvent.getHistory().size(), 2);
-    assertEquals(numberState.changeEvent.getHistory().get(1).current, (Integer)null);
-    assertEquals((int)numberState.changeEvent.getHistory().get(1).previous, 6);
+    assertEquals((int)numberState.getChangeEvent().getHistory().size(), 2);
+    assertEquals(numberState.getChangeEvent().getHistory().get(1).current, (Integer)null);
+    assertEquals((int)numberState.getChangeEvent().getHistory().get(1).previous, 6);
     numberState.set(null);
-    assertEquals((int)numberState.changeEvent.getHistory().size(), 2); // no change
+    assertEquals((int)numberState.getChangeEvent().getHistory().size(), 2); // no change
     numberState.set(100);
-    assertEquals((int)numberState.changeEvent.getHistory().size(), 3);
-    assertEquals((int)numberState.changeEvent.getHistory().get(2).current, 100);
-    assertEquals(numberState.changeEvent.getHistory().get(2).previous, (Integer)null);
+    assertEquals((int)numberState.getChangeEvent().getHistory().size(), 3);
+    assertEquals((int)numberState.getChangeEvent().getHistory().get(2).current, 100);
+    assertEquals(numberState.getChangeEvent().getHistory().get(2).previous, (Integer)null);
   }
 
   @Test public void whenOnce(){
@@ -158,4 +168,165 @@ public class StateTest {
     state.set(8);
     assertEquals(history.getHistory().size(), 2);
   }
+
+  @Test public void lazyEvents() throws IllegalAccessException {
+    State<String> state = new State<>("a");
+    state.set("b");
+    state.set(null);
+    state.set("c");
+    state.enableHistory(4);
+    state.set("d");
+    StateSnapshot.capture(state).restore();
+    // set() on a state without requested events doesn't allocate any
+    assertEquals(allocatedEvents(state), 0);
+
+    List<String> values = new ArrayList<>();
+    state.getNewValueEvent().addListener((String val) -> values.add(val));
+    state.set("e");
+    assertEquals(allocatedEvents(state), 1);
+    assertEquals(String.join(",", values), "e");
+  }
+
+  /// Counts the Event fields of the state that have been allocated
+  private static int allocatedEvents(State<?> state) throws IllegalAccessException {
+    int count = 0;
+
+    for(Field field : State.class.getDeclaredFields()){
+      if(!Event.class.isAssignableFrom(field.getType())) continue;
+      field.setAccessible(true);
+      if(field.get(state) != null) count++;
+    }
+
+    return count;
+  }
+
+  @Test public void history(){
+    State<Integer> state = new State<>(5);
+    StateHistory<Integer> history = state.enableHistory(3);
+    assertEquals(history.size(), 1);
+    assertEquals(history.getSequence(), 0L);
+
+    state.set(6);
+    state.set(6); // no change
+    state.set(7);
+    assertEquals(history.size(), 3);
+    assertEquals(history.valueAt(0), (Integer)5);
+    assertEquals(history.valueAt(2), (Integer)7);
+    assertEquals(history.valueAtTime(history.timeAt(1)), (Integer)6);
+    assertEquals(history.valueAtTime(history.timeAt(0)-1), null);
+
+    // undo/redo
+    assertTrue(history.undo());
+    assertEquals(state.val(), (Integer)6);
+    assertTrue(history.undo());
+    assertEquals(state.val(), (Integer)5);
+    assertEquals(history.undo(), false);
+    assertTrue(history.redo());
+    assertEquals(state.val(), (Integer)6);
+
+    // a new change drops the redo branch
+    state.set(10);
+    assertEquals(history.redo(), false);
+    assertEquals(history.getSequence(), 2L);
+    assertEquals(history.valueAt(2), (Integer)10);
+
+    // bounded
+    state.set(11);
+    state.set(12);
+    assertEquals(history.size(), 3);
+    assertEquals(history.firstSequence(), 2L);
+    assertEquals(history.valueAt(1), null);
+  }
+
+  @Test public void snapshot(){
+    State<Integer> a = new State<>(1);
+    State<String> b = new State<>("one");
+    a.enableHistory(10);
+    b.enableHistory(10);
+
+    StateSnapshot snapshot = StateSnapshot.capture(a, b);
+    long time = System.nanoTime();
+    a.set(2);
+    b.set("two");
+
+    snapshot.restore();
+    assertEquals(a.val(), (Integer)1);
+    assertEquals(b.val(), "one");
+
+    a.set(3);
+    StateSnapshot.at(time, a, b).restore();
+    assertEquals(a.val(), (Integer)1);
+    assertEquals(b.val(), "one");
+    StateSnapshot.at(b.getHistory().timeAt(1), a, b).restore();
+    assertEquals(a.val(), (Integer)2);
+    assertEquals(b.val(), "two");
+  }
+
+  @Test public void snapshotStore() throws IOException {
+    Path file = Files.createTempFile("states", ".snapshot");
+
+    try {
+      State<Integer> width = new State<>(640);
+      State<String> title = new State<>("main");
+      State<Long> empty = new State<>();
+
+      new StateSnapshotStore()
+        .register("width", width, EventCodec.integers())
+        .register("title", title, EventCodec.strings())
+        .register("empty", empty, EventCodec.longs())
+        .save(file);
+
+      State<Integer> width2 = new State<>(100);
+      State<String> title2 = new State<>();
+      List<String> notifications = new ArrayList<>();
+      // listeners see the fully restored set of states
+      width2.push((Integer val) -> notifications.add("width "+val.toString()+" "+title2.val()));
+      title2.push((String val) -> notifications.add("title "+val+" "+width2.val().toString()));
+      notifications.clear();
+
+      int count = new StateSnapshotStore()
+        .register("title", title2, EventCodec.strings())
+        .register("width", width2, EventCodec.integers())
+        .restore(file);
+
+      assertEquals(count, 3 - 1); // "empty" isn't registered
+      assertEquals(width2.val(), (Integer)640);
+      assertEquals(title2.val(), "main");
+      assertEquals(notifications.size(), 2);
+      assertEquals(notifications.get(0), "width 640 main");
+      assertEquals(notifications.get(1), "title main 640");
+
+      // corrupt lengths are reported as IOException instead of failing the allocation
+      byte[] bytes = Files.readAllBytes(file);
+      ByteBuffer.wrap(bytes).putInt(16, -5); // name length of the first record
+      Files.write(file, bytes);
+      assertEquals(restoreFails(file, title2, width2), true);
+
+      bytes[16] = 0x7f; // huge name length
+      Files.write(file, bytes);
+      assertEquals(restoreFails(file, title2, width2), true);
+
+      bytes = Files.readAllBytes(file);
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      buffer.putInt(16, "width".length());
+      buffer.putInt(16 + 4 + "width".length(), Integer.MAX_VALUE); // value length
+      Files.write(file, bytes);
+      assertEquals(restoreFails(file, title2, width2), true);
+      assertEquals(width2.val(), (Integer)640);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static boolean restoreFails(Path file, State<String> title, State<Integer> width){
+    try {
+      new StateSnapshotStore()
+        .register("title", title, EventCodec.strings())
+        .register("width", width, EventCodec.integers())
+        .restore(file);
+      return false;
+    } catch(IOException exc){
+      return true;
+    }
+  }
 }
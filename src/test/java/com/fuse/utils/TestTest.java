@@ -0,0 +1,141 @@
+package com.fuse.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+
+// (junit's Test annotation is written out; Test is the class under test)
+public class TestTest {
+
+  @org.junit.Test public void verdictCache() throws InterruptedException {
+    Test<String> test = new Test<>();
+    AtomicInteger calls = new AtomicInteger(0);
+
+    test.addListener((String val) -> { calls.incrementAndGet(); return val.startsWith("admin"); }, this);
+    test.enableVerdictCache(2);
+
+    assertEquals(test.test("admin1"), true);
+    assertEquals(test.test("admin1"), true);
+    assertEquals(test.test("guest"), false);
+    assertEquals(test.test("guest"), false);
+    assertEquals(calls.get(), 2);
+
+    // LRU; admin1 was used least recently
+    test.test("admin2");
+    test.test("guest");
+    test.test("admin1");
+    assertEquals(calls.get(), 4);
+
+    // changing the listeners invalidates the cache
+    Predicate<String> reject = (String val) -> false;
+    test.addListener(reject, this);
+    assertEquals(test.test("admin1"), false);
+    assertEquals(calls.get(), 5);
+    test.removeListener(reject);
+    assertEquals(test.test("admin1"), true);
+    assertEquals(calls.get(), 6);
+
+    // once-listeners bypass the cache
+    test.addOnceListener((String val) -> false, this);
+    assertEquals(test.test("admin1"), false);
+    assertEquals(test.test("admin1"), true);
+    assertEquals(calls.get(), 8);
+  }
+
+  @org.junit.Test public void verdictCache_keyAndTtl() throws InterruptedException {
+    Test<int[]> test = new Test<>();
+    AtomicInteger calls = new AtomicInteger(0);
+
+    test.addListener((int[] val) -> { calls.incrementAndGet(); return val[0] > 0; });
+    // arrays don't implement equals; key by their first element
+    test.enableVerdictCache(10, (int[] val) -> val[0], 50, TimeUnit.MILLISECONDS);
+
+    test.test(new int[]{1});
+    test.test(new int[]{1});
+    assertEquals(calls.get(), 1);
+
+    Thread.sleep(60);
+    test.test(new int[]{1});
+    assertEquals(calls.get(), 2);
+  }
+
+  @org.junit.Test public void bulkListeners(){
+    Test<Integer> test = new Test<>();
+    List<Predicate<Integer>> ls = new ArrayList<>();
+    for(int i=0; i<100; i++){
+      final int limit = i;
+      ls.add((Integer val) -> val >= limit);
+    }
+
+    test.addListeners(ls, this);
+    assertEquals(test.size(), 100);
+    assertEquals(test.test(50), false);
+
+    test.removeAllListeners(ls.subList(51, 100));
+    assertEquals(test.size(), 51);
+    assertEquals(test.test(50), true);
+  }
+
+  @org.junit.Test public void verdictCache_forwardedTest(){
+    Test<String> test = new Test<>();
+    Test<String> source = new Test<>();
+    AtomicInteger calls = new AtomicInteger(0);
+
+    test.addListener((String val) -> { calls.incrementAndGet(); return true; });
+    source.forward(test);
+    test.enableVerdictCache(10);
+
+    assertEquals(test.test("foo"), true);
+    assertEquals(test.test("foo"), true);
+    assertEquals(calls.get(), 1);
+
+    // the forwarded test's listeners are part of the verdict
+    Predicate<String> reject = (String val) -> false;
+    source.addListener(reject);
+    assertEquals(test.test("foo"), false);
+    source.removeListener(reject);
+    // (whether the rejected test reached the counting listener depends on the order of the owners)
+    int before = calls.get();
+    assertEquals(test.test("foo"), true);
+    assertEquals(test.test("foo"), true);
+    assertEquals(calls.get(), before + 1);
+
+    // and so is state they depend on
+    source.invalidateVerdicts();
+    assertEquals(test.test("foo"), true);
+    assertEquals(calls.get(), before + 2);
+  }
+
+  @org.junit.Test public void removedOnceListeners(){
+    Test<Integer> test = new Test<>();
+    Predicate<Integer> positive = (Integer val) -> val > 0;
+
+    // a once-listener that was removed (in bulk, individually or by owner) isn't removed by the next test
+    List<Predicate<Integer>> removed = new ArrayList<>();
+    removed.add(positive);
+    test.addOnceListener(positive, this);
+    test.removeAllListeners(removed);
+    test.addListener(positive, this);
+    assertEquals(test.test(1), true);
+    assertEquals(test.test(-1), false);
+    assertEquals(test.size(), 1);
+
+    test.removeListener(positive);
+    test.addOnceListener(positive, this);
+    test.removeListener(positive);
+    test.addListener(positive);
+    assertEquals(test.test(1), true);
+    assertEquals(test.size(), 1);
+
+    test.removeListeners(null);
+    test.addOnceListener(positive, this);
+    test.removeListeners(this);
+    test.addListener(positive);
+    assertEquals(test.test(1), true);
+    assertEquals(test.size(), 1);
+  }
+}